@@ -0,0 +1,107 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// 悪意のある入力。 length を変えて、 1 文字あたりの時間が一定であることを確かめる
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AdversarialBenchmark {
+    @Param({"nestedParens", "unclosedParens", "dotFlood", "longHost", "randomDots", "logLines", "minifiedCode", "dottedBase64"})
+    public String shape;
+
+    @Param({"1000", "10000", "100000"})
+    public int length;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private String text;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.buffer = new EntityBuffer();
+        this.text = create(this.shape, this.length);
+    }
+
+    private static final String BASE64_CHARS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_";
+
+    static String create(String shape, int length) {
+        StringBuilder sb = new StringBuilder(length);
+        Random random = new Random(42);
+        switch (shape) {
+            case "nestedParens":
+                // a.com/((((a))))
+                sb.append("a.com/");
+                int depth = (length - sb.length() - 1) / 2;
+                for (int i = 0; i < depth; i++) sb.append('(');
+                sb.append('a');
+                for (int i = 0; i < depth; i++) sb.append(')');
+                break;
+            case "unclosedParens":
+                // a.com/(a.com/(a.com/( ...
+                while (sb.length() < length) sb.append("a.com/(");
+                break;
+            case "dotFlood":
+                while (sb.length() < length) sb.append("a.");
+                break;
+            case "longHost":
+                // a-a-a-...-a.com
+                for (int i = length - 5; i >= 0; i--) sb.append(i % 2 == 0 ? 'a' : '-');
+                sb.append(".com");
+                break;
+            case "randomDots":
+                // aa.a..a...aa.
+                while (sb.length() < length) sb.append(random.nextBoolean() ? 'a' : '.');
+                break;
+            case "logLines":
+                while (sb.length() < length) {
+                    sb.append("2024-05-").append(10 + random.nextInt(20)).append("T12:").append(10 + random.nextInt(50))
+                            .append(":07.").append(random.nextInt(1000)).append("Z INFO c.e.svc.http.Handler 10.0.")
+                            .append(random.nextInt(256)).append('.').append(random.nextInt(256))
+                            .append(" GET /api/v1.2/items.").append(random.nextInt(100)).append(".json 200 0.")
+                            .append(random.nextInt(1000)).append("s\n");
+                }
+                break;
+            case "minifiedCode":
+                // a.b.c(d.e,f.g);var h=i.j.k;
+                while (sb.length() < length) {
+                    for (int i = random.nextInt(4); i >= 0; i--)
+                        sb.append((char) ('a' + random.nextInt(26))).append(random.nextBoolean() ? "." : "");
+                    sb.append(".x").append(";(,=)".charAt(random.nextInt(5)));
+                }
+                break;
+            case "dottedBase64":
+                // JWT のように . で区切った base64url
+                while (sb.length() < length) {
+                    for (int i = 1 + random.nextInt(40); i > 0; i--)
+                        sb.append(BASE64_CHARS.charAt(random.nextInt(BASE64_CHARS.length())));
+                    sb.append('.');
+                }
+                break;
+            default:
+                throw new IllegalArgumentException(shape);
+        }
+        if (sb.length() > length) sb.setLength(length);
+        return sb.toString();
+    }
+
+    @Benchmark
+    public int extract() {
+        return this.extractor.extract(this.text, this.buffer);
+    }
+
+    @Benchmark
+    public int extractEntities() {
+        return this.extractor.extractEntities(this.text, this.buffer);
+    }
+}
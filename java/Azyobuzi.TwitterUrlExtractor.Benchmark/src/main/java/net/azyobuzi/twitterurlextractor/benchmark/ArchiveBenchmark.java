@@ -0,0 +1,108 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.EntityInfo;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.NdjsonArchiveScanner;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArchiveBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"200000"})
+    public int tweetCount;
+
+    private Extractor extractor;
+    private NdjsonArchiveScanner scanner;
+    private ObjectMapper mapper;
+    private ForkJoinPool pool;
+    private Path file;
+
+    @Setup
+    public void setup() throws IOException {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.scanner = new NdjsonArchiveScanner(this.extractor);
+        this.mapper = new ObjectMapper();
+        this.pool = new ForkJoinPool();
+        this.file = Files.createTempFile("tweets", ".ndjson");
+
+        String[] texts = Corpus.get("mixed");
+        try (Writer writer = Files.newBufferedWriter(this.file, UTF_8)) {
+            for (int i = 0; i < this.tweetCount; i++) {
+                String text = this.mapper.writeValueAsString(texts[i % texts.length]);
+                writer.write("{\"created_at\":\"Sat Feb 27 18:30:53 +0000 2016\",\"id\":" + i
+                        + ",\"id_str\":\"" + i + "\",\"text\":" + text
+                        + ",\"user\":{\"id\":12345,\"screen_name\":\"azyobuzin\",\"description\":\"https://azyobuzi.net/\"}"
+                        + ",\"entities\":{\"hashtags\":[],\"urls\":[],\"user_mentions\":[]},\"lang\":\"ja\"}\n");
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.pool.shutdown();
+        Files.delete(this.file);
+    }
+
+    @Benchmark
+    public long mappedScanner() throws IOException {
+        final AtomicLong count = new AtomicLong();
+        this.scanner.scan(this.file, new CountingHandler(count));
+        return count.get();
+    }
+
+    @Benchmark
+    public long mappedScannerParallel() throws IOException {
+        final AtomicLong count = new AtomicLong();
+        this.scanner.scan(this.file, this.pool, new CountingHandler(count));
+        return count.get();
+    }
+
+    @Benchmark
+    public long jacksonAndExtract() throws IOException {
+        long count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(this.file, UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                JsonNode text = this.mapper.readTree(line).get("text");
+                if (text == null) continue;
+                List<EntityInfo> entities = this.extractor.extract(text.asText());
+                count += entities.size();
+            }
+        }
+        return count;
+    }
+
+    private static class CountingHandler implements NdjsonArchiveScanner.TweetHandler {
+        private final AtomicLong count;
+
+        CountingHandler(AtomicLong count) {
+            this.count = count;
+        }
+
+        @Override
+        public void onTweet(long lineOffset, EntityBuffer entities) {
+            this.count.addAndGet(entities.size());
+        }
+    }
+}
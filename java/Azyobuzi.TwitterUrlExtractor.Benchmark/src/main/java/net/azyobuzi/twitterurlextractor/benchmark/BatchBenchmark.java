@@ -0,0 +1,53 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.BatchResult;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BatchBenchmark {
+    @Param({"mixed"})
+    public String corpus;
+
+    @Param({"10000"})
+    public int batchSize;
+
+    @Param({"1", "2", "4", "8"})
+    public int parallelism;
+
+    private Extractor extractor;
+    private List<String> texts;
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.pool = new ForkJoinPool(this.parallelism);
+
+        String[] source = Corpus.get(this.corpus);
+        this.texts = new ArrayList<>(this.batchSize);
+        for (int i = 0; i < this.batchSize; i++)
+            this.texts.add(source[i % source.length]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+    @Benchmark
+    public BatchResult extractAll() {
+        return this.extractor.extractAll(this.texts, this.pool);
+    }
+}
@@ -0,0 +1,46 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.TldTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConstructorBenchmark {
+    private TldTable tldTable;
+    private byte[] serializedTldTable;
+
+    @Setup
+    public void setup() throws IOException {
+        this.tldTable = TldTable.create(TldLists.GTLDS, TldLists.CTLDS);
+
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        this.tldTable.writeTo(stream);
+        this.serializedTldTable = stream.toByteArray();
+    }
+
+    @Benchmark
+    public Extractor newExtractor() {
+        return new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+    }
+
+    @Benchmark
+    public Extractor newExtractorWithSharedTable() {
+        return new Extractor(this.tldTable);
+    }
+
+    @Benchmark
+    public Extractor newExtractorFromSerializedTable() throws IOException {
+        return new Extractor(TldTable.readFrom(new ByteArrayInputStream(this.serializedTldTable)));
+    }
+}
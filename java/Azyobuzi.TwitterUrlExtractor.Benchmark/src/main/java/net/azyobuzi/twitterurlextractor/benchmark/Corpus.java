@@ -0,0 +1,154 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import java.util.Random;
+
+final class Corpus {
+    private Corpus() {
+    }
+
+    private static final String[] JAPANESE = {
+            "今日は天気がいいので散歩してきました。写真はこちら https://t.co/Ab3dEf9Hij",
+            "新しいブログ記事を書きました！ http://blog.example.jp/entry/2016/02/27/183053 ぜひ読んでください",
+            "twitter.comこれは日本語です。example.com中国語t.co/abcde한국twitter.com example2.comテストtwitter.com/abcde",
+            "明日の勉強会の資料です → https://connpass.com/event/12345/ #勉強会",
+            "おはようございます。今日も一日がんばりましょう。",
+            "@azyobuzin それ、www.amazon.co.jp/dp/B00ABCDEFG で売ってましたよ",
+            "ニュース: 東京で桜が開花 http://www3.nhk.or.jp/news/html/20160327/k10010457711000.html",
+            "なるほど、そういうことだったのか。知らなかった…",
+    };
+
+    private static final String[] CJK = {
+            "今天天气很好，我们去公园散步吧。详情请看 http://www.example.cn/news/2016/03/index.html",
+            "这是一个测试。baidu.com 上面有很多信息。",
+            "오늘 날씨가 정말 좋네요! 사진 보러 오세요 https://t.co/Qw3rTy5UiO",
+            "네이버 naver.com 에서 검색해 보세요. 한국어 텍스트입니다.",
+            "我们的新产品已经发布了，欢迎访问 https://www.taobao.com/item?id=123456789&spm=a21bo",
+            "今天的会议推迟到明天下午三点。",
+            "사랑해요 한국 https://ko.wikipedia.org/wiki/대한민국",
+            "中文维基百科 http://zh.wikipedia.org/wiki/中华人民共和国 很有用",
+    };
+
+    private static final String[] CYRILLIC = {
+            "Привет всем! Новая статья в блоге: http://пример.рф/статьи/производительность-кода",
+            "Смотрите расписание на сайте президент.рф/новости или на kremlin.ru/events/president",
+            "Сегодня отличная погода, идём гулять в парк. Фото https://t.co/Xy7zAb3CdE",
+            "Подробности: https://ru.wikipedia.org/wiki/Москва_(город) и yandex.ru/maps",
+            "Встреча перенесена на завтра, в три часа дня.",
+            "Київ сьогодні: https://uk.wikipedia.org/wiki/Київ #новини",
+            "Доклад о JVM доступен по ссылке habr.com/ru/post/123456/ — рекомендую",
+            "Спасибо за вопросы! Ответы будут в следующем выпуске.",
+    };
+
+    private static final String[] ACCENTED = {
+            "Hôm nay trời đẹp quá, đi dạo công viên thôi! Ảnh ở đây https://t.co/Vn4mBq8RtY",
+            "Đọc bài viết mới tại vnexpress.net/thời-sự/tin-tức-123.html nhé",
+            "Ça y est, la conférence commence à 14h : https://www.lemonde.fr/économie/article/2016/03/27/réforme",
+            "Ñandú y pingüino en el zoológico. Más información en www.zoológico.es/animales/ñandú",
+            "Größere Änderungen: siehe https://de.wikipedia.org/wiki/Übersicht_(Begriffsklärung)",
+            "Crème brûlée, façade, naïve, coördinate — résumé attached.",
+            "São Paulo é uma cidade incrível! Veja mais em https://pt.wikipedia.org/wiki/São_Paulo",
+            "Ελληνικά: καλημέρα σε όλους, δείτε το ελλάδα.gr/νέα",
+    };
+
+    private static final String[] EMOJI = {
+            "今日のランチ🍜🍣😋 https://t.co/Em0jI12345 #グルメ",
+            "Great news 🎉🎉🎉 check it out 👉 https://example.com/launch 🚀",
+            "𠮷野家で牛丼🐮 www.yoshinoya.com/menu/ 😀😀",
+            "😂😂😂😂😂😂😂😂 that was hilarious 🤣",
+            "🇯🇵🇺🇸 travel tips: japan-guide.com/e/e2035.html ✈️🗾",
+            "🍎🍊🍋🍌🍉🍇🍓🍈🍒🍑🍍🥝🥑🍅🍆🥒🥕🌽🌶️🥔🍠",
+            "❤️ 𩸽の塩焼き 𠀋 𡈽 https://ja.wikipedia.org/wiki/ホッケ 🐟",
+            "@someone 👍👍 ok see you at 7️⃣ o'clock 🕖",
+    };
+
+    private static final String[] LATIN = {
+            "Just setting up my twttr",
+            "Check out our new release notes at https://github.com/azyobuzin/Azyobuzi.TwitterUrlExtractor/releases",
+            "Great article on performance: http://mechanical-sympathy.blogspot.com/2013/02/cpu-cache-flushing-fallacy.html #perf",
+            "Meeting moved to 3pm, see calendar for details.",
+            "RT @someone: Wow, look at this https://t.co/zXcVbNm123 amazing!!!",
+            "Ça va très bien, merci! Voir www.lemonde.fr pour les nouvelles.",
+            "Visit example.com/path/to/page?query=value&other=1 (or the mirror at mirror.example.org)",
+            "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.",
+    };
+
+    private static final String[] URL_DENSE = {
+            "http://a.co http://b.jp https://c.com/d e.org/f?g=h i.net j.tv/k l.io m.me/n(o) https://t.co/pQrStUvWxY",
+            "twitter.com google.com facebook.com youtube.com amazon.com wikipedia.org yahoo.co.jp baidu.com",
+            "https://t.co/aaaaaaaaaa https://t.co/bbbbbbbbbb https://t.co/cccccccccc https://t.co/dddddddddd",
+            "www.example.com:8080/a/b/c?d=e&f=g#h http://user@example.com/ ftp.example.net/file.tar.gz",
+            "日本.jp example.com/テスト 中国.cn http://日本語.jp/パス twitter.com/azyobuzin/status/1234567890",
+            "foo.com/bar_(baz) foo.com/(a(b)c) foo.com/a-b-c_d foo.com/?q=1 foo.com/#frag foo.com/~user",
+    };
+
+    private static final String[] NO_URL = {
+            "おはようございます。今日も一日がんばりましょう。",
+            "Just setting up my twttr",
+            "今天的会议推迟到明天下午三点。",
+            "Meeting moved to 3pm. Please bring your notes... and coffee.",
+            "e.g. i.e. etc. Mr. Smith vs. Dr. Jones, 1.5 times 2.0 equals 3.0",
+            "사랑해요. 감사합니다. 안녕하세요.",
+            "@someone #hashtag $CASH ... nothing to see here.",
+            "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod tempor.",
+    };
+
+    private static final int LONG_DOCUMENT_LENGTH = 64 * 1024;
+    private static final int LONG_DOCUMENT_COUNT = 4;
+
+    static String[] get(String name) {
+        switch (name) {
+            case "japanese":
+                return JAPANESE;
+            case "cjk":
+                return CJK;
+            case "cyrillic":
+                return CYRILLIC;
+            case "accented":
+                return ACCENTED;
+            case "emoji":
+                return EMOJI;
+            case "latin":
+                return LATIN;
+            case "urlDense":
+                return URL_DENSE;
+            case "noUrl":
+                return NO_URL;
+            case "mixed":
+                return concat(JAPANESE, CJK, LATIN, URL_DENSE, NO_URL);
+            case "longDocument":
+                return longDocuments();
+            default:
+                throw new IllegalArgumentException("Unknown corpus: " + name);
+        }
+    }
+
+    private static String[] concat(String[]... arrays) {
+        int len = 0;
+        for (String[] x : arrays) len += x.length;
+
+        String[] result = new String[len];
+        int i = 0;
+        for (String[] x : arrays) {
+            System.arraycopy(x, 0, result, i, x.length);
+            i += x.length;
+        }
+        return result;
+    }
+
+    private static String[] longDocuments() {
+        String[] source = concat(JAPANESE, CJK, LATIN, URL_DENSE, NO_URL);
+        Random random = new Random(LONG_DOCUMENT_LENGTH);
+        String[] result = new String[LONG_DOCUMENT_COUNT];
+
+        for (int i = 0; i < result.length; i++) {
+            StringBuilder sb = new StringBuilder(LONG_DOCUMENT_LENGTH + 256);
+            while (sb.length() < LONG_DOCUMENT_LENGTH) {
+                sb.append(source[random.nextInt(source.length)]);
+                sb.append(random.nextBoolean() ? ' ' : '\n');
+            }
+            result[i] = sb.toString();
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,64 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.DomainCounter;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DomainCounterBenchmark {
+    @Param({"urlDense", "mixed"})
+    public String corpus;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private DomainCounter counter;
+    private Map<String, Long> map;
+    private String[] texts;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.buffer = new EntityBuffer();
+        this.counter = new DomainCounter(1024, true);
+        this.map = new HashMap<>();
+        this.texts = Corpus.get(this.corpus);
+    }
+
+    private String next() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return this.texts[i];
+    }
+
+    @Benchmark
+    public int countDomains() {
+        return this.extractor.countDomains(this.next(), this.counter);
+    }
+
+    // 以前のやり方: 抽出した URL からホストを切り出して HashMap で数える
+    @Benchmark
+    public int hashMap() {
+        String text = this.next();
+        int count = this.extractor.extractWithDetails(text, this.buffer);
+        for (int i = 0; i < count; i++) {
+            int start = this.buffer.getHostStartIndex(i);
+            String host = text.substring(start, start + this.buffer.getHostLength(i)).toLowerCase(Locale.ROOT);
+            Long n = this.map.get(host);
+            this.map.put(host, n == null ? 1L : n + 1);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,55 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.ExtractionCache;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractionCacheBenchmark {
+    @Param({"japanese", "urlDense", "longDocument"})
+    public String corpus;
+
+    private Extractor extractor;
+    private ExtractionCache cache;
+    private EntityBuffer buffer;
+    private char[][] texts;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.cache = new ExtractionCache(this.extractor, 16 * 1024 * 1024);
+        this.buffer = new EntityBuffer();
+
+        String[] source = Corpus.get(this.corpus);
+        this.texts = new char[source.length][];
+        for (int i = 0; i < source.length; i++)
+            this.texts[i] = source[i].toCharArray();
+    }
+
+    // リツイートのように、中身は同じでも毎回別のインスタンスが来る
+    private String next() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return new String(this.texts[i]);
+    }
+
+    @Benchmark
+    public int extract() {
+        return this.extractor.extract(this.next(), this.buffer);
+    }
+
+    @Benchmark
+    public int extractWithCache() {
+        return this.cache.extract(this.next(), this.buffer);
+    }
+}
@@ -0,0 +1,136 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.EntityInfo;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.TweetLengthConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractorBenchmark {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"japanese", "cjk", "cyrillic", "accented", "emoji", "latin", "urlDense", "noUrl", "mixed", "longDocument"})
+    public String corpus;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private String[] texts;
+    private char[][] charArrays;
+    private byte[][] utf8Arrays;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.buffer = new EntityBuffer();
+        this.texts = Corpus.get(this.corpus);
+        this.charArrays = new char[this.texts.length][];
+        for (int i = 0; i < this.texts.length; i++)
+            this.charArrays[i] = this.texts[i].toCharArray();
+        this.utf8Arrays = new byte[this.texts.length][];
+        for (int i = 0; i < this.texts.length; i++)
+            this.utf8Arrays[i] = this.texts[i].getBytes(UTF_8);
+    }
+
+    private int nextIndex() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return i;
+    }
+
+    private String next() {
+        return this.texts[this.nextIndex()];
+    }
+
+    @Benchmark
+    public List<EntityInfo> extract() {
+        return this.extractor.extract(this.next());
+    }
+
+    @Benchmark
+    public int extractToBuffer() {
+        return this.extractor.extract(this.next(), this.buffer);
+    }
+
+    @Benchmark
+    public int extractWithDetails() {
+        return this.extractor.extractWithDetails(this.next(), this.buffer);
+    }
+
+    @Benchmark
+    public boolean containsUrl() {
+        return this.extractor.containsUrl(this.next());
+    }
+
+    @Benchmark
+    public int countUrls() {
+        return this.extractor.countUrls(this.next());
+    }
+
+    @Benchmark
+    public List<EntityInfo> extractFirst() {
+        return this.extractor.extract(this.next(), 1);
+    }
+
+    @Benchmark
+    public int extractEntities() {
+        return this.extractor.extractEntities(this.next(), this.buffer);
+    }
+
+    @Benchmark
+    public int extractEntitiesWithCodePointIndexes() {
+        return this.extractor.extractEntitiesWithCodePointIndexes(this.next(), this.buffer);
+    }
+
+    // 抽出した後にエンティティごとに先頭から数える、これまでの方法
+    @Benchmark
+    public int extractEntitiesAndCountCodePoints() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractEntities(text, buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int startIndex = buffer.getStartIndex(i);
+            result += text.codePointCount(0, startIndex) + text.codePointCount(startIndex, startIndex + buffer.getLength(i));
+        }
+        return result;
+    }
+
+    @Benchmark
+    public int extractCharArray() {
+        char[] text = this.charArrays[this.nextIndex()];
+        return this.extractor.extract(text, 0, text.length, this.buffer);
+    }
+
+    @Benchmark
+    public int extractUtf8() {
+        byte[] text = this.utf8Arrays[this.nextIndex()];
+        return this.extractor.extractUtf8(text, 0, text.length, this.buffer);
+    }
+
+    @Benchmark
+    public int decodeAndExtract() {
+        return this.extractor.extract(new String(this.utf8Arrays[this.nextIndex()], UTF_8), this.buffer);
+    }
+
+    @Benchmark
+    public int getTweetLength() {
+        return this.extractor.getTweetLength(this.next(), 23);
+    }
+
+    @Benchmark
+    public int getWeightedTweetLength() {
+        return this.extractor.getWeightedTweetLength(this.next(), TweetLengthConfig.V3, this.buffer);
+    }
+}
@@ -0,0 +1,55 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.ExtractorMetrics;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+// 同じ Extractor で、 ExtractorMetrics を設定しないもの (none) を基準に記録のコストを比べる
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ExtractorMetricsBenchmark {
+    @Param({"japanese", "latin", "urlDense", "noUrl"})
+    public String corpus;
+
+    @Param({"none", "counts", "times"})
+    public String metrics;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private String[] texts;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        switch (this.metrics) {
+            case "none":
+                break;
+            case "counts":
+                this.extractor.setMetrics(new ExtractorMetrics());
+                break;
+            case "times":
+                this.extractor.setMetrics(new ExtractorMetrics(true));
+                break;
+            default:
+                throw new IllegalArgumentException(this.metrics);
+        }
+        this.buffer = new EntityBuffer();
+        this.texts = Corpus.get(this.corpus);
+    }
+
+    @Benchmark
+    public int extract() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return this.extractor.extract(this.texts[i], this.buffer);
+    }
+}
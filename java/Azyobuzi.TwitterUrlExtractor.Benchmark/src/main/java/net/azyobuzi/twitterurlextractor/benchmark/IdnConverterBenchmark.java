@@ -0,0 +1,87 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.IdnConverter;
+import org.openjdk.jmh.annotations.*;
+
+import java.net.IDN;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IdnConverterBenchmark {
+    private static final String[] LABELS = {"日本語", "ドメイン名例", "пример", "bücher", "mañana", "他们为什么不说中文", "한국어", "ελληνικά"};
+    private static final int TEXT_COUNT = 1000;
+    // 同じホストが繰り返し現れる
+    private static final int HOST_COUNT = 200;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private IdnConverter converter;
+    // 容量が 1 なので、ほぼ毎回変換する
+    private IdnConverter uncachedConverter;
+    private String[] texts;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.buffer = new EntityBuffer();
+        this.converter = new IdnConverter(HOST_COUNT * 2);
+        this.uncachedConverter = new IdnConverter(1);
+
+        this.texts = new String[TEXT_COUNT];
+        for (int i = 0; i < TEXT_COUNT; i++) {
+            int host = (i * 7) % HOST_COUNT;
+            this.texts[i] = "見てね https://www." + LABELS[host % LABELS.length] + (host / LABELS.length) + ".com/path と https://example.com/ #tag";
+        }
+    }
+
+    private String next() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return this.texts[i];
+    }
+
+    @Benchmark
+    public int convertWithCache() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractWithDetails(text, buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++)
+            result += this.converter.toAscii(text, buffer, i).length();
+        return result;
+    }
+
+    @Benchmark
+    public int convertWithoutCache() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractWithDetails(text, buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++)
+            result += this.uncachedConverter.toAscii(text, buffer, i).length();
+        return result;
+    }
+
+    // 以前のやり方: ホストを切り出して java.net.IDN で変換する
+    @Benchmark
+    public int convertWithIdn() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractWithDetails(text, buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int hostStartIndex = buffer.getHostStartIndex(i);
+            result += IDN.toASCII(text.substring(hostStartIndex, hostStartIndex + buffer.getHostLength(i))).length();
+        }
+        return result;
+    }
+}
@@ -1,4 +1,4 @@
-package net.azyobuzi.twitterurlextractor;
+package net.azyobuzi.twitterurlextractor.benchmark;
 
 // https://github.com/mikvor/hashmapTest/blob/1c02bf70de6835be188ac20d83ed137344800083/src/main/java/map/intint/IntIntMap4a.java
 
@@ -0,0 +1,106 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.EntityInfo;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.Linkifier;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LinkifierBenchmark {
+    private static final int MAX_DISPLAY_URL_LENGTH = 30;
+
+    @Param({"japanese", "latin", "urlDense", "emoji"})
+    public String corpus;
+
+    private Extractor extractor;
+    private Linkifier linkifier;
+    private EntityBuffer buffer;
+    private StringBuilder builder;
+    private ByteBuffer byteBuffer;
+    private String[] texts;
+    private int index;
+
+    @Setup
+    public void setup() {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.linkifier = new Linkifier(this.extractor, new Linkifier.DefaultTemplate(MAX_DISPLAY_URL_LENGTH));
+        this.buffer = new EntityBuffer();
+        this.builder = new StringBuilder();
+        this.byteBuffer = ByteBuffer.allocate(64 * 1024);
+        this.texts = Corpus.get(this.corpus);
+    }
+
+    private String next() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return this.texts[i];
+    }
+
+    @Benchmark
+    public int renderToStringBuilder() throws IOException {
+        StringBuilder builder = this.builder;
+        builder.setLength(0);
+        this.linkifier.render(this.next(), builder);
+        return builder.length();
+    }
+
+    @Benchmark
+    public int renderToByteBuffer() {
+        ByteBuffer byteBuffer = this.byteBuffer;
+        byteBuffer.clear();
+        this.linkifier.render(this.next(), byteBuffer);
+        return byteBuffer.position();
+    }
+
+    // 以前のやり方: 部分文字列を切り出して、それぞれエスケープしてから連結する
+    @Benchmark
+    public String concatenate() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractEntities(text, buffer);
+        String result = "";
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            int start = buffer.getStartIndex(i);
+            int end = start + buffer.getLength(i);
+            String entity = text.substring(start, end);
+            String href;
+            String display = entity;
+            switch (buffer.getType(i)) {
+                case EntityInfo.URL:
+                    href = entity.startsWith("http://") || entity.startsWith("https://") ? entity : "http://" + entity;
+                    display = entity.replaceFirst("^https?://", "");
+                    if (display.length() > MAX_DISPLAY_URL_LENGTH)
+                        display = display.substring(0, MAX_DISPLAY_URL_LENGTH) + "…";
+                    break;
+                case EntityInfo.HASHTAG:
+                    href = "https://twitter.com/hashtag/" + entity.substring(1);
+                    break;
+                case EntityInfo.MENTION:
+                    href = "https://twitter.com/" + entity.substring(1);
+                    break;
+                default:
+                    href = "https://twitter.com/search?q=%24" + entity.substring(1);
+                    break;
+            }
+            result += escape(text.substring(index, start)) + "<a href=\"" + escape(href) + "\">" + escape(display) + "</a>";
+            index = end;
+        }
+        return result + escape(text.substring(index));
+    }
+
+    private static String escape(String s) {
+        return s.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;").replace("'", "&#39;");
+    }
+}
@@ -0,0 +1,90 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.EntityBuffer;
+import net.azyobuzi.twitterurlextractor.Extractor;
+import net.azyobuzi.twitterurlextractor.TcoCache;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TcoCacheBenchmark {
+    private static final String ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final int CODE_COUNT = 1000;
+
+    private Extractor extractor;
+    private EntityBuffer buffer;
+    private TcoCache cache;
+    private ConcurrentHashMap<String, String> map;
+    private String[] texts;
+    private int index;
+
+    @Setup
+    public void setup() throws IOException {
+        this.extractor = new Extractor(TldLists.GTLDS, TldLists.CTLDS);
+        this.buffer = new EntityBuffer();
+        this.cache = new TcoCache(CODE_COUNT * 2, new TcoCache.Loader() {
+            @Override
+            public String load(String code) {
+                return "https://example.com/" + code;
+            }
+        });
+        this.map = new ConcurrentHashMap<>();
+
+        // すべてキャッシュに載っている t.co の URL を 2 つずつ含むツイート
+        Random random = new Random(1);
+        String[] codes = new String[CODE_COUNT];
+        for (int i = 0; i < CODE_COUNT; i++) {
+            char[] code = new char[10];
+            for (int j = 0; j < code.length; j++)
+                code[j] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+            codes[i] = new String(code);
+            this.cache.get(TcoCache.toId(codes[i]));
+            this.map.put(codes[i], "https://example.com/" + codes[i]);
+        }
+
+        this.texts = new String[CODE_COUNT];
+        for (int i = 0; i < CODE_COUNT; i++)
+            this.texts[i] = "見てね https://t.co/" + codes[i] + " と https://t.co/" + codes[(i * 7) % CODE_COUNT] + " #tag";
+    }
+
+    private String next() {
+        int i = this.index;
+        this.index = i + 1 == this.texts.length ? 0 : i + 1;
+        return this.texts[i];
+    }
+
+    @Benchmark
+    public int resolveWithId() throws IOException {
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extract(this.next(), buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++)
+            result += this.cache.get(buffer, i).length();
+        return result;
+    }
+
+    // 以前のやり方: 短縮コードを切り出して Map を引く
+    @Benchmark
+    public int resolveWithSubstring() {
+        String text = this.next();
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extract(text, buffer);
+        int result = 0;
+        for (int i = 0; i < count; i++) {
+            int end = buffer.getStartIndex(i) + buffer.getLength(i);
+            String code = text.substring(text.lastIndexOf('/', end - 1) + 1, end);
+            result += this.map.get(code).length();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,87 @@
+package net.azyobuzi.twitterurlextractor.benchmark;
+
+import com.twitter.TldLists;
+import net.azyobuzi.twitterurlextractor.TldTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// TldTable と、以前の Extractor が使っていた IntIntMap4a の比較。どちらもハッシュ値の計算から行う
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TldLookupBenchmark {
+    // ホストの末尾として現れるラベル。 TLD でないものも含む
+    private static final String[] QUERIES = {
+            "com", "jp", "co", "net", "org", "tv", "cn", "io", "me", "kr",
+            "Com", "JP", "example", "html", "wikipedia", "b", "txt", "a", "みんな", "中国",
+            "testtest", "blogspot", "p", "ne", "ac", "info", "xyz", "zzz", "tar", "gz",
+    };
+
+    private TldTable tldTable;
+    private IntIntMap4a intIntMap;
+    private char[][] texts;
+
+    @Setup
+    public void setup() {
+        List<String> specialCcTlds = Arrays.asList("co", "tv");
+        this.tldTable = TldTable.create(TldLists.GTLDS, TldLists.CTLDS, specialCcTlds);
+
+        // 以前の Extractor と同じ方法で IntIntMap4a を作る
+        this.intIntMap = new IntIntMap4a(TldLists.GTLDS.size() + TldLists.CTLDS.size() + specialCcTlds.size(), 0.75f);
+        for (String x : TldLists.GTLDS) this.intIntMap.put(hash(x.toCharArray()), x.length());
+        for (String x : specialCcTlds) this.intIntMap.put(hash(x.toCharArray()), 1 << 30 | x.length());
+        for (String x : TldLists.CTLDS) {
+            if (!specialCcTlds.contains(x)) this.intIntMap.put(hash(x.toCharArray()), 1 << 31 | x.length());
+        }
+
+        this.texts = new char[QUERIES.length][];
+        for (int i = 0; i < QUERIES.length; i++)
+            this.texts[i] = QUERIES[i].toCharArray();
+    }
+
+    // 以前の Extractor と同じハッシュ値
+    private static int hash(char[] text) {
+        int hash1 = 5381;
+        int hash2 = hash1;
+        for (int i = 0; i < text.length; ) {
+            hash1 = ((hash1 << 5) + hash1) ^ toLower(text[i++]);
+            if (i >= text.length) break;
+            hash2 = ((hash2 << 5) + hash2) ^ toLower(text[i++]);
+        }
+        return hash1 + hash2 * 1566083941;
+    }
+
+    private static int toLower(char c) {
+        return c <= 'Z' && c >= 'A' ? (c + 32) : c;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(30)
+    public int tldTable() {
+        int found = 0;
+        for (char[] text : this.texts) {
+            if (this.tldTable.getType(text, 0, text.length) != TldTable.NOT_FOUND)
+                found++;
+        }
+        return found;
+    }
+
+    // 文字列を照合しないので、ハッシュ値と長さが同じなら TLD でなくても見つかったことになる
+    @Benchmark
+    @OperationsPerInvocation(30)
+    public int intIntMap4a() {
+        int found = 0;
+        for (char[] text : this.texts) {
+            int info = this.intIntMap.get(hash(text));
+            if (info != IntIntMap4a.NO_VALUE && text.length == (info & 0x3fffffff))
+                found++;
+        }
+        return found;
+    }
+}
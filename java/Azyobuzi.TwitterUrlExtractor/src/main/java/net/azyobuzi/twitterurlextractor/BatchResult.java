@@ -0,0 +1,114 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.List;
+
+/**
+ * {@link Extractor#extractAll(List)} の結果。
+ * 全テキストのエンティティを、テキストのインデックス・開始位置・長さの配列に順番に並べて保持する。
+ */
+public final class BatchResult {
+    private final int firstTextIndex;
+    private final int textCount;
+    private final int[] textOffsets;
+    private int[] textIndexes;
+    private int[] startIndexes;
+    private int[] lengths;
+    private int count;
+
+    BatchResult(int firstTextIndex, int textCount, int capacity) {
+        this.firstTextIndex = firstTextIndex;
+        this.textCount = textCount;
+        this.textOffsets = new int[textCount + 1];
+        this.textIndexes = new int[capacity];
+        this.startIndexes = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public int getTextCount() {
+        return this.textCount;
+    }
+
+    public int getTextIndex(int index) {
+        this.checkIndex(index);
+        return this.textIndexes[index];
+    }
+
+    public int getStartIndex(int index) {
+        this.checkIndex(index);
+        return this.startIndexes[index];
+    }
+
+    public int getLength(int index) {
+        this.checkIndex(index);
+        return this.lengths[index];
+    }
+
+    // textIndex 番目のテキストのエンティティは getFirstEntityIndex(textIndex) から getEntityCount(textIndex) 個
+    public int getFirstEntityIndex(int textIndex) {
+        return this.textOffsets[this.localTextIndex(textIndex)];
+    }
+
+    public int getEntityCount(int textIndex) {
+        int i = this.localTextIndex(textIndex);
+        return this.textOffsets[i + 1] - this.textOffsets[i];
+    }
+
+    void add(int textIndex, EntityBuffer buffer) {
+        int n = buffer.size();
+        this.ensureCapacity(this.count + n);
+
+        for (int i = 0; i < n; i++) {
+            this.textIndexes[this.count] = textIndex;
+            this.startIndexes[this.count] = buffer.getStartIndex(i);
+            this.lengths[this.count] = buffer.getLength(i);
+            this.count++;
+        }
+
+        this.textOffsets[textIndex - this.firstTextIndex + 1] = this.count;
+    }
+
+    // 後ろに続くテキストの結果を連結する
+    void addAll(BatchResult other) {
+        int n = other.count;
+        this.ensureCapacity(this.count + n);
+        System.arraycopy(other.textIndexes, 0, this.textIndexes, this.count, n);
+        System.arraycopy(other.startIndexes, 0, this.startIndexes, this.count, n);
+        System.arraycopy(other.lengths, 0, this.lengths, this.count, n);
+
+        int base = other.firstTextIndex - this.firstTextIndex;
+        for (int i = 1; i <= other.textCount; i++)
+            this.textOffsets[base + i] = this.count + other.textOffsets[i];
+
+        this.count += n;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= this.textIndexes.length) return;
+
+        int newCapacity = Math.max(capacity, this.textIndexes.length * 2);
+        this.textIndexes = copyOf(this.textIndexes, newCapacity, this.count);
+        this.startIndexes = copyOf(this.startIndexes, newCapacity, this.count);
+        this.lengths = copyOf(this.lengths, newCapacity, this.count);
+    }
+
+    private static int[] copyOf(int[] array, int newLength, int count) {
+        int[] newArray = new int[newLength];
+        System.arraycopy(array, 0, newArray, 0, count);
+        return newArray;
+    }
+
+    private int localTextIndex(int textIndex) {
+        if (textIndex < this.firstTextIndex || textIndex >= this.firstTextIndex + this.textCount)
+            throw new IndexOutOfBoundsException("Text index: " + textIndex + ", Text count: " + this.textCount);
+        return textIndex - this.firstTextIndex;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= this.count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+    }
+}
@@ -0,0 +1,212 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.Arrays;
+
+/**
+ * ハッシュ値からエントリー番号を引く開番地法の表。キャッシュのストライプなどで使う。
+ * キーと値は使う側がエントリー番号を添字にした配列で持ち、この表はエントリーごとのハッシュ値と参照ビットだけを持つ。
+ * 削除は後ろに続くエントリーを詰めて行うので、削除済みの印が溜まらない。
+ * 追い出すエントリーは CLOCK 法で選ぶ。
+ * スレッドセーフではないので、ストライプのロックの中で使うこと。
+ */
+final class ClockTable {
+    static final int NOT_FOUND = -1;
+    static final int MAX_STRIPE_COUNT = 64;
+
+    // ストライプの選択に使う下位ビットの数。スロットの位置にはこれを最後に使う
+    private static final int STRIPE_BITS = 6;
+
+    private static final int FREE_SLOT = -1;
+
+    private static final byte FREE = 0;
+    private static final byte USED = 1;
+    private static final byte REFERENCED = 2;
+
+    // エントリーごとの情報
+    private int[] hashes;
+    private byte[] states;
+    private int entryCount;
+    private int size;
+    private int hand;
+    private final IntList freeEntries = new IntList();
+
+    // ハッシュ値から引くエントリー番号の表
+    private int[] slots;
+    private int slotMask;
+
+    // first と next で探している位置
+    private int cursor;
+    private int cursorHash;
+
+    ClockTable(int capacity) {
+        this.freeEntries.initialize();
+        this.allocate(capacity);
+    }
+
+    // units を 1 ストライプあたりの量で割ったものから、ストライプの数を決める
+    static int stripeCount(long units) {
+        return (int) Math.min(MAX_STRIPE_COUNT, Long.highestOneBit(Math.max(1, units)));
+    }
+
+    static int mix(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+    static int mix(long hash) {
+        return mix((int) (hash ^ (hash >>> 32)));
+    }
+
+    int capacity() {
+        return this.hashes.length;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    // ハッシュ値が hash のエントリーのうち最初のもの。キーは使う側で照合し、違えば next で次を探す
+    int first(int hash) {
+        this.cursor = this.slotOf(hash);
+        this.cursorHash = hash;
+        return this.next();
+    }
+
+    int next() {
+        int[] slots = this.slots;
+        int mask = this.slotMask;
+        int hash = this.cursorHash;
+        for (int i = this.cursor; ; i = (i + 1) & mask) {
+            int entry = slots[i];
+            if (entry == FREE_SLOT) return NOT_FOUND;
+            if (this.hashes[entry] == hash) {
+                this.cursor = (i + 1) & mask;
+                return entry;
+            }
+        }
+    }
+
+    // エントリー番号を割り当てて hash で引けるようにする。空きがなければ NOT_FOUND を返すので、 evict か grow してからやり直す
+    int add(int hash) {
+        int entry;
+        if (this.freeEntries.size() > 0) {
+            entry = this.freeEntries.removeLast();
+        } else if (this.entryCount < this.hashes.length) {
+            entry = this.entryCount++;
+        } else {
+            return NOT_FOUND;
+        }
+
+        this.hashes[entry] = hash;
+        this.states[entry] = USED;
+        this.insertSlot(entry);
+        this.size++;
+        return entry;
+    }
+
+    // 参照ビットを立てる
+    void touch(int entry) {
+        this.states[entry] = REFERENCED;
+    }
+
+    void remove(int entry) {
+        this.removeSlot(entry);
+        this.states[entry] = FREE;
+        this.freeEntries.add(entry);
+        this.size--;
+    }
+
+    // 参照ビットが立っていないエントリーが見つかるまで針を進めて、 1 つ削除して返す。空なら NOT_FOUND
+    int evict() {
+        if (this.size == 0) return NOT_FOUND;
+
+        byte[] states = this.states;
+        while (true) {
+            int entry = this.hand;
+            this.hand = entry + 1 >= this.entryCount ? 0 : entry + 1;
+
+            byte state = states[entry];
+            if (state == USED) {
+                this.remove(entry);
+                return entry;
+            }
+            if (state == REFERENCED) states[entry] = USED;
+        }
+    }
+
+    // キーを差し替えたエントリーを新しいハッシュ値で引けるようにする
+    void rehash(int entry, int hash) {
+        this.removeSlot(entry);
+        this.hashes[entry] = hash;
+        this.insertSlot(entry);
+    }
+
+    // 容量を 2 倍にする。使う側の配列も capacity に合わせること
+    void grow() {
+        int[] hashes = this.hashes;
+        byte[] states = this.states;
+        int count = this.entryCount;
+
+        this.allocate(hashes.length << 1);
+        System.arraycopy(hashes, 0, this.hashes, 0, count);
+        System.arraycopy(states, 0, this.states, 0, count);
+        for (int i = 0; i < count; i++) {
+            if (this.states[i] != FREE)
+                this.insertSlot(i);
+        }
+    }
+
+    void clear() {
+        Arrays.fill(this.slots, FREE_SLOT);
+        this.freeEntries.initialize();
+        this.entryCount = 0;
+        this.size = 0;
+        this.hand = 0;
+    }
+
+    // 使用率が 1/2 以下になるスロット数
+    private void allocate(int capacity) {
+        this.hashes = new int[capacity];
+        this.states = new byte[capacity];
+
+        int slotCount = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.slots = new int[slotCount];
+        this.slotMask = slotCount - 1;
+        Arrays.fill(this.slots, FREE_SLOT);
+    }
+
+    private int slotOf(int hash) {
+        return Integer.rotateRight(hash, STRIPE_BITS) & this.slotMask;
+    }
+
+    private void insertSlot(int entry) {
+        int mask = this.slotMask;
+        int i = this.slotOf(this.hashes[entry]);
+        while (this.slots[i] != FREE_SLOT) i = (i + 1) & mask;
+        this.slots[i] = entry;
+    }
+
+    // 後ろに続くエントリーのうち、本来の位置から空いた位置までたどれるものを詰める
+    private void removeSlot(int entry) {
+        int[] slots = this.slots;
+        int mask = this.slotMask;
+        int pos = this.slotOf(this.hashes[entry]);
+        while (slots[pos] != entry) pos = (pos + 1) & mask;
+
+        while (true) {
+            int last = pos;
+            pos = (pos + 1) & mask;
+            while (true) {
+                int x = slots[pos];
+                if (x == FREE_SLOT) {
+                    slots[last] = FREE_SLOT;
+                    return;
+                }
+                int slot = this.slotOf(this.hashes[x]);
+                if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos) break;
+                pos = (pos + 1) & mask;
+            }
+            slots[last] = slots[pos];
+        }
+    }
+}
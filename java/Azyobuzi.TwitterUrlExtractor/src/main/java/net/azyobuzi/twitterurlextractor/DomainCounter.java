@@ -0,0 +1,298 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * {@link Extractor#countDomains(String, DomainCounter)} で URL のドメインを数える。
+ * capacity 個のドメインだけを保持する Space-Saving 法なので、メモリ使用量は一定で、
+ * 保持しきれなくなったら最も少ないドメインを追い出して、その回数を引き継ぐ。
+ * 回数が全体の 1 / capacity を超えるドメインは必ず残り、各回数の誤差は getError 以下になる。
+ * ドメインは小文字にした文字列の 64 ビットハッシュで開番地法の表から探し、文字列も照合する。
+ * 既に保持しているドメインを数えるときはアロケーションが発生しない。
+ * スレッドセーフではないので、スレッドごとに作って merge でまとめること。
+ */
+public final class DomainCounter {
+    // ccTLD の直前にあれば、もう 1 つ前のラベルまでをドメインとする
+    private static final String[] SECOND_LEVEL_LABELS = {"ac", "co", "com", "ed", "edu", "go", "gov", "gr", "lg", "ne", "net", "or", "org"};
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final int capacity;
+    private final boolean countsWholeHost;
+
+    // エントリーごとの情報
+    private final long[] hashes;
+    private final char[][] keys;
+    private final int[] keyLengths;
+    private final long[] counts;
+    private final long[] errors;
+    private int size;
+    private long total;
+
+    // 回数の最小ヒープ。 heap にはエントリー番号が入り、 heapIndexes はエントリーのヒープ上の位置
+    private final int[] heap;
+    private final int[] heapIndexes;
+
+    // ハッシュ値から引くエントリー番号の表。追い出しはヒープで決めるので、 CLOCK 法の部分は使わない
+    private final ClockTable table;
+
+    public DomainCounter(int capacity) {
+        this(capacity, false);
+    }
+
+    // countsWholeHost なら www.example.com と example.com を区別する
+    public DomainCounter(int capacity, boolean countsWholeHost) {
+        if (capacity < 1 || capacity > 1 << 28)
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+
+        this.capacity = capacity;
+        this.countsWholeHost = countsWholeHost;
+        this.hashes = new long[capacity];
+        this.keys = new char[capacity][];
+        this.keyLengths = new int[capacity];
+        this.counts = new long[capacity];
+        this.errors = new long[capacity];
+        this.heap = new int[capacity];
+        this.heapIndexes = new int[capacity];
+        this.table = new ClockTable(capacity);
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public boolean countsWholeHost() {
+        return this.countsWholeHost;
+    }
+
+    // 保持しているドメインの数
+    public int size() {
+        return this.size;
+    }
+
+    // これまでに数えた URL の数
+    public long getTotal() {
+        return this.total;
+    }
+
+    public void clear() {
+        this.table.clear();
+        this.size = 0;
+        this.total = 0;
+    }
+
+    // 回数の多い順に最大 k 個
+    public List<Entry> top(int k) {
+        if (k < 0)
+            throw new IllegalArgumentException("k must not be negative");
+
+        List<Entry> result = new ArrayList<>(this.size);
+        for (int i = 0; i < this.size; i++)
+            result.add(new Entry(new String(this.keys[i], 0, this.keyLengths[i]), this.counts[i], this.errors[i]));
+
+        Collections.sort(result, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry x, Entry y) {
+                if (x.count != y.count) return x.count > y.count ? -1 : 1;
+                return x.domain.compareTo(y.domain);
+            }
+        });
+
+        return k < result.size() ? result.subList(0, k) : result;
+    }
+
+    // 保持していなければ 0
+    public long getCount(String domain) {
+        int len = domain.length();
+        char[] chars = domain.toCharArray();
+        int entry = this.find(hash(chars, 0, len), chars, 0, len);
+        return entry == ClockTable.NOT_FOUND ? 0 : this.counts[entry];
+    }
+
+    // other の回数を足し込む。 other は変更しない
+    public void merge(DomainCounter other) {
+        if (other == this)
+            throw new IllegalArgumentException("Cannot merge itself");
+
+        // other が追い出したドメインの回数は other の最小の回数以下なので、
+        // other にないドメインにはそれを回数と誤差の両方に足しておく。このため回数の合計は total より大きくなることがある
+        long otherMin = other.size == other.capacity ? other.counts[other.heap[0]] : 0;
+        if (otherMin > 0) {
+            for (int i = 0; i < this.size; i++) {
+                if (other.find(this.hashes[i], this.keys[i], 0, this.keyLengths[i]) != ClockTable.NOT_FOUND) continue;
+                this.counts[i] += otherMin;
+                this.errors[i] += otherMin;
+                this.siftDown(this.heapIndexes[i]);
+            }
+        }
+
+        for (int i = 0; i < other.size; i++)
+            this.add(other.hashes[i], other.keys[i], 0, other.keyLengths[i], other.counts[i], other.errors[i]);
+    }
+
+    // URL のホスト [hostStartIndex, hostEndIndex) を数える。 tldStartIndex は TLD の先頭
+    void add(char[] text, int hostStartIndex, int hostEndIndex, int tldStartIndex, int tldType) {
+        int start = hostStartIndex;
+        if (!this.countsWholeHost) {
+            start = labelStartIndex(text, hostStartIndex, tldStartIndex - 1);
+            if (tldType != TldTable.GTLD && start > hostStartIndex && isSecondLevelLabel(text, start, tldStartIndex - 1))
+                start = labelStartIndex(text, hostStartIndex, start - 1);
+        }
+
+        this.add(hash(text, start, hostEndIndex), text, start, hostEndIndex - start, 1, 0);
+    }
+
+    // dotIndex の直前のラベルの先頭
+    private static int labelStartIndex(char[] text, int hostStartIndex, int dotIndex) {
+        int i = dotIndex;
+        while (i > hostStartIndex && text[i - 1] != '.') i--;
+        return i;
+    }
+
+    private static boolean isSecondLevelLabel(char[] text, int start, int end) {
+        Labels:
+        for (String x : SECOND_LEVEL_LABELS) {
+            if (x.length() != end - start) continue;
+            for (int i = 0; i < x.length(); i++) {
+                if (toLower(text[start + i]) != x.charAt(i)) continue Labels;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private void add(long hash, char[] text, int start, int len, long count, long error) {
+        this.total += count;
+
+        int entry = this.find(hash, text, start, len);
+        if (entry == ClockTable.NOT_FOUND) {
+            if (this.size < this.capacity) {
+                // 削除しないので、エントリー番号は 0 から順に割り当てられる
+                entry = this.table.add(ClockTable.mix(hash));
+                int i = this.size++;
+                this.heap[i] = entry;
+                this.heapIndexes[entry] = i;
+                this.counts[entry] = 0;
+                this.errors[entry] = 0;
+                this.siftUp(i);
+            } else {
+                // 最も少ないものを追い出して、その回数を誤差として引き継ぐ
+                entry = this.heap[0];
+                this.table.rehash(entry, ClockTable.mix(hash));
+                this.errors[entry] = this.counts[entry];
+            }
+
+            this.setKey(entry, hash, text, start, len);
+            this.errors[entry] += error;
+        }
+
+        this.counts[entry] += count;
+        this.siftDown(this.heapIndexes[entry]);
+    }
+
+    private void setKey(int entry, long hash, char[] text, int start, int len) {
+        char[] key = this.keys[entry];
+        if (key == null || key.length < len)
+            this.keys[entry] = key = new char[Math.max(len, 16)];
+        for (int i = 0; i < len; i++)
+            key[i] = toLower(text[start + i]);
+        this.keyLengths[entry] = len;
+        this.hashes[entry] = hash;
+    }
+
+    private int find(long hash, char[] text, int start, int len) {
+        ClockTable table = this.table;
+        for (int entry = table.first(ClockTable.mix(hash)); entry != ClockTable.NOT_FOUND; entry = table.next()) {
+            if (this.hashes[entry] == hash && this.keyEquals(entry, text, start, len))
+                return entry;
+        }
+        return ClockTable.NOT_FOUND;
+    }
+
+    private boolean keyEquals(int entry, char[] text, int start, int len) {
+        if (this.keyLengths[entry] != len) return false;
+        char[] key = this.keys[entry];
+        for (int i = 0; i < len; i++) {
+            if (key[i] != toLower(text[start + i])) return false;
+        }
+        return true;
+    }
+
+    private void siftUp(int i) {
+        int[] heap = this.heap;
+        int entry = heap[i];
+        long count = this.counts[entry];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            int x = heap[parent];
+            if (this.counts[x] <= count) break;
+            heap[i] = x;
+            this.heapIndexes[x] = i;
+            i = parent;
+        }
+        heap[i] = entry;
+        this.heapIndexes[entry] = i;
+    }
+
+    private void siftDown(int i) {
+        int[] heap = this.heap;
+        int size = this.size;
+        int entry = heap[i];
+        long count = this.counts[entry];
+        while (true) {
+            int child = (i << 1) + 1;
+            if (child >= size) break;
+            if (child + 1 < size && this.counts[heap[child + 1]] < this.counts[heap[child]]) child++;
+            int x = heap[child];
+            if (this.counts[x] >= count) break;
+            heap[i] = x;
+            this.heapIndexes[x] = i;
+            i = child;
+        }
+        heap[i] = entry;
+        this.heapIndexes[entry] = i;
+    }
+
+    private static char toLower(char c) {
+        if (c < 0x80) return c >= 'A' && c <= 'Z' ? (char) (c + 0x20) : c;
+        return Character.toLowerCase(c);
+    }
+
+    // 小文字にした文字列の FNV-1a
+    private static long hash(char[] text, int start, int end) {
+        long h = FNV_OFFSET_BASIS;
+        for (int i = start; i < end; i++)
+            h = (h ^ toLower(text[i])) * FNV_PRIME;
+        return h;
+    }
+
+    public static final class Entry {
+        private final String domain;
+        private final long count;
+        private final long error;
+
+        Entry(String domain, long count, long error) {
+            this.domain = domain;
+            this.count = count;
+            this.error = error;
+        }
+
+        // 小文字にしたもの
+        public String getDomain() {
+            return this.domain;
+        }
+
+        // 実際の回数は count - error 以上 count 以下
+        public long getCount() {
+            return this.count;
+        }
+
+        public long getError() {
+            return this.error;
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.Arrays;
+import java.util.TreeMap;
+
+/**
+ * twitter-text 3.1.0 の絵文字の正規表現 (TwitterTextEmojiRegex) と同じ並びを 1 つの絵文字として見つける。
+ * 正規表現の選択肢のうち、並びとして列挙できるものは木にし、文字の集合に修飾子が続くものは範囲の表で判定する。
+ * 選択肢の順番は長い並びが先になっているので、一番長く一致するものを選べば正規表現と同じ結果になる。
+ */
+final class EmojiTable {
+    private EmojiTable() {
+    }
+
+    private static final int ZWJ = 0x200D;
+    private static final int TEXT_SELECTOR = 0xFE0E;
+    private static final int EMOJI_SELECTOR = 0xFE0F;
+    private static final int KEYCAP = 0x20E3;
+    private static final int HANDSHAKE = 0x1F91D;
+    private static final int MAN = 0x1F468;
+    private static final int WOMAN = 0x1F469;
+    private static final int PERSON = 0x1F9D1;
+    private static final int FIRST_SKIN_TONE = 0x1F3FB;
+    private static final int LAST_SKIN_TONE = 0x1F3FF;
+    private static final int REGIONAL_INDICATOR_A = 0x1F1E6;
+
+    // 以下の表は start, end (end を含む) の組を昇順に並べたもの
+
+    // 👨 などと ZWJ のあとに続く職業
+    private static final int[] PROFESSIONS = {
+            0x1F33E, 0x1F33E, 0x1F373, 0x1F373, 0x1F393, 0x1F393, 0x1F3A4, 0x1F3A4, 0x1F3A8, 0x1F3A8, 0x1F3EB, 0x1F3EB,
+            0x1F3ED, 0x1F3ED, 0x1F4BB, 0x1F4BC, 0x1F527, 0x1F527, 0x1F52C, 0x1F52C, 0x1F680, 0x1F680, 0x1F692, 0x1F692,
+            0x1F9AF, 0x1F9B3, 0x1F9BC, 0x1F9BD
+    };
+
+    // 異体字セレクタか肌の色、 ZWJ 、性別の記号が続くもの
+    private static final int[] GENDERED_WITH_SELECTOR = {
+            0x26F9, 0x26F9, 0x1F3CB, 0x1F3CC, 0x1F574, 0x1F575
+    };
+
+    // 肌の色を付けられ、 ZWJ と性別の記号が続くもの
+    private static final int[] GENDERED = {
+            0x1F3C3, 0x1F3C4, 0x1F3CA, 0x1F3CA, 0x1F46E, 0x1F46E, 0x1F471, 0x1F471, 0x1F473, 0x1F473, 0x1F477, 0x1F477,
+            0x1F481, 0x1F482, 0x1F486, 0x1F487, 0x1F645, 0x1F647, 0x1F64B, 0x1F64B, 0x1F64D, 0x1F64E, 0x1F6A3, 0x1F6A3,
+            0x1F6B4, 0x1F6B6, 0x1F926, 0x1F926, 0x1F935, 0x1F935, 0x1F937, 0x1F939, 0x1F93D, 0x1F93E, 0x1F9B8, 0x1F9B9,
+            0x1F9CD, 0x1F9CF, 0x1F9D6, 0x1F9DD
+    };
+
+    // 異体字セレクタが続くときだけ絵文字になるもの
+    private static final int[] TEXT_WITH_SELECTOR = {
+            0xA9, 0xA9, 0xAE, 0xAE, 0x2122, 0x2122, 0x265F, 0x265F
+    };
+
+    // 既定で文字として表示されるもの。 U+FE0E が続かなければ絵文字になる
+    private static final int[] TEXT_DEFAULT = {
+            0x203C, 0x203C, 0x2049, 0x2049, 0x2139, 0x2139, 0x2194, 0x2199, 0x21A9, 0x21AA, 0x231A, 0x231B,
+            0x2328, 0x2328, 0x23CF, 0x23CF, 0x23ED, 0x23EF, 0x23F1, 0x23F2, 0x23F8, 0x23FA, 0x24C2, 0x24C2,
+            0x25AA, 0x25AB, 0x25B6, 0x25B6, 0x25C0, 0x25C0, 0x25FB, 0x25FE, 0x2600, 0x2604, 0x260E, 0x260E,
+            0x2611, 0x2611, 0x2614, 0x2615, 0x2618, 0x2618, 0x2620, 0x2620, 0x2622, 0x2623, 0x2626, 0x2626,
+            0x262A, 0x262A, 0x262E, 0x262F, 0x2638, 0x263A, 0x2640, 0x2640, 0x2642, 0x2642, 0x2648, 0x2653,
+            0x2660, 0x2660, 0x2663, 0x2663, 0x2665, 0x2666, 0x2668, 0x2668, 0x267B, 0x267B, 0x267F, 0x267F,
+            0x2692, 0x2697, 0x2699, 0x2699, 0x269B, 0x269C, 0x26A0, 0x26A1, 0x26A7, 0x26A7, 0x26AA, 0x26AB,
+            0x26B0, 0x26B1, 0x26BD, 0x26BE, 0x26C4, 0x26C5, 0x26C8, 0x26C8, 0x26CF, 0x26CF, 0x26D1, 0x26D1,
+            0x26D3, 0x26D4, 0x26E9, 0x26EA, 0x26F0, 0x26F5, 0x26F8, 0x26F8, 0x26FA, 0x26FA, 0x26FD, 0x26FD,
+            0x2702, 0x2702, 0x2708, 0x2709, 0x270F, 0x270F, 0x2712, 0x2712, 0x2714, 0x2714, 0x2716, 0x2716,
+            0x271D, 0x271D, 0x2721, 0x2721, 0x2733, 0x2734, 0x2744, 0x2744, 0x2747, 0x2747, 0x2757, 0x2757,
+            0x2763, 0x2764, 0x27A1, 0x27A1, 0x2934, 0x2935, 0x2B05, 0x2B07, 0x2B1B, 0x2B1C, 0x2B50, 0x2B50,
+            0x2B55, 0x2B55, 0x3030, 0x3030, 0x303D, 0x303D, 0x3297, 0x3297, 0x3299, 0x3299, 0x1F004, 0x1F004,
+            0x1F170, 0x1F171, 0x1F17E, 0x1F17F, 0x1F202, 0x1F202, 0x1F21A, 0x1F21A, 0x1F22F, 0x1F22F, 0x1F237, 0x1F237,
+            0x1F321, 0x1F321, 0x1F324, 0x1F32C, 0x1F336, 0x1F336, 0x1F37D, 0x1F37D, 0x1F396, 0x1F397, 0x1F399, 0x1F39B,
+            0x1F39E, 0x1F39F, 0x1F3CD, 0x1F3CE, 0x1F3D4, 0x1F3DF, 0x1F3F3, 0x1F3F3, 0x1F3F5, 0x1F3F5, 0x1F3F7, 0x1F3F7,
+            0x1F43F, 0x1F43F, 0x1F441, 0x1F441, 0x1F4FD, 0x1F4FD, 0x1F549, 0x1F54A, 0x1F56F, 0x1F570, 0x1F573, 0x1F573,
+            0x1F576, 0x1F579, 0x1F587, 0x1F587, 0x1F58A, 0x1F58D, 0x1F5A5, 0x1F5A5, 0x1F5A8, 0x1F5A8, 0x1F5B1, 0x1F5B2,
+            0x1F5BC, 0x1F5BC, 0x1F5C2, 0x1F5C4, 0x1F5D1, 0x1F5D3, 0x1F5DC, 0x1F5DE, 0x1F5E1, 0x1F5E1, 0x1F5E3, 0x1F5E3,
+            0x1F5E8, 0x1F5E8, 0x1F5EF, 0x1F5EF, 0x1F5F3, 0x1F5F3, 0x1F5FA, 0x1F5FA, 0x1F6CB, 0x1F6CB, 0x1F6CD, 0x1F6CF,
+            0x1F6E0, 0x1F6E5, 0x1F6E9, 0x1F6E9, 0x1F6F0, 0x1F6F0, 0x1F6F3, 0x1F6F3
+    };
+
+    // 上と同じだが、肌の色を付けられるもの
+    private static final int[] MODIFIER_BASES_TEXT_DEFAULT = {
+            0x261D, 0x261D, 0x26F7, 0x26F7, 0x26F9, 0x26F9, 0x270C, 0x270D, 0x1F3CB, 0x1F3CC, 0x1F574, 0x1F575,
+            0x1F590, 0x1F590
+    };
+
+    // 肌の色を付けられるもの
+    private static final int[] MODIFIER_BASES = {
+            0x270A, 0x270B, 0x1F385, 0x1F385, 0x1F3C2, 0x1F3C4, 0x1F3C7, 0x1F3C7, 0x1F3CA, 0x1F3CA, 0x1F442, 0x1F443,
+            0x1F446, 0x1F450, 0x1F466, 0x1F469, 0x1F46E, 0x1F46E, 0x1F470, 0x1F478, 0x1F47C, 0x1F47C, 0x1F481, 0x1F483,
+            0x1F485, 0x1F487, 0x1F4AA, 0x1F4AA, 0x1F57A, 0x1F57A, 0x1F595, 0x1F596, 0x1F645, 0x1F647, 0x1F64B, 0x1F64F,
+            0x1F6A3, 0x1F6A3, 0x1F6B4, 0x1F6B6, 0x1F6C0, 0x1F6C0, 0x1F6CC, 0x1F6CC, 0x1F90F, 0x1F90F, 0x1F918, 0x1F91C,
+            0x1F91E, 0x1F91F, 0x1F926, 0x1F926, 0x1F930, 0x1F939, 0x1F93D, 0x1F93E, 0x1F9B5, 0x1F9B6, 0x1F9B8, 0x1F9B9,
+            0x1F9BB, 0x1F9BB, 0x1F9CD, 0x1F9CF, 0x1F9D1, 0x1F9DD
+    };
+
+    // 既定で絵文字として表示されるもの。あとの異体字セレクタは別の絵文字として数えられる
+    private static final int[] PRESENTATION = {
+            0x23E9, 0x23EC, 0x23F0, 0x23F0, 0x23F3, 0x23F3, 0x267E, 0x267E, 0x26CE, 0x26CE, 0x2705, 0x2705,
+            0x2728, 0x2728, 0x274C, 0x274C, 0x274E, 0x274E, 0x2753, 0x2755, 0x2795, 0x2797, 0x27B0, 0x27B0,
+            0x27BF, 0x27BF, 0xE50A, 0xE50A, 0x1F0CF, 0x1F0CF, 0x1F18E, 0x1F18E, 0x1F191, 0x1F19A, 0x1F1E6, 0x1F1FF,
+            0x1F201, 0x1F201, 0x1F232, 0x1F236, 0x1F238, 0x1F23A, 0x1F250, 0x1F251, 0x1F300, 0x1F320, 0x1F32D, 0x1F335,
+            0x1F337, 0x1F37C, 0x1F37E, 0x1F384, 0x1F386, 0x1F393, 0x1F3A0, 0x1F3C1, 0x1F3C5, 0x1F3C6, 0x1F3C8, 0x1F3C9,
+            0x1F3CF, 0x1F3D3, 0x1F3E0, 0x1F3F0, 0x1F3F4, 0x1F3F4, 0x1F3F8, 0x1F43E, 0x1F440, 0x1F440, 0x1F444, 0x1F445,
+            0x1F451, 0x1F465, 0x1F46A, 0x1F46A, 0x1F46F, 0x1F46F, 0x1F479, 0x1F47B, 0x1F47D, 0x1F480, 0x1F484, 0x1F484,
+            0x1F488, 0x1F4A9, 0x1F4AB, 0x1F4FC, 0x1F4FF, 0x1F53D, 0x1F54B, 0x1F54E, 0x1F550, 0x1F567, 0x1F5A4, 0x1F5A4,
+            0x1F5FB, 0x1F644, 0x1F648, 0x1F64A, 0x1F680, 0x1F6A2, 0x1F6A4, 0x1F6B3, 0x1F6B7, 0x1F6BF, 0x1F6C1, 0x1F6C5,
+            0x1F6D0, 0x1F6D2, 0x1F6D5, 0x1F6D5, 0x1F6EB, 0x1F6EC, 0x1F6F4, 0x1F6FA, 0x1F7E0, 0x1F7EB, 0x1F90D, 0x1F90E,
+            0x1F910, 0x1F917, 0x1F91D, 0x1F91D, 0x1F920, 0x1F925, 0x1F927, 0x1F92F, 0x1F93A, 0x1F93A, 0x1F93C, 0x1F93C,
+            0x1F93F, 0x1F945, 0x1F947, 0x1F971, 0x1F973, 0x1F976, 0x1F97A, 0x1F9A2, 0x1F9A5, 0x1F9AA, 0x1F9AE, 0x1F9B4,
+            0x1F9B7, 0x1F9B7, 0x1F9BA, 0x1F9BA, 0x1F9BC, 0x1F9CA, 0x1F9D0, 0x1F9D0, 0x1F9DE, 0x1F9FF, 0x1FA70, 0x1FA73,
+            0x1FA78, 0x1FA7A, 0x1FA80, 0x1FA82, 0x1FA90, 0x1FA95
+    };
+
+    // ZWJ でつながった並びのうち、上の表で表せないもの
+    private static final String[] SEQUENCES = {
+            "1F468 200D 2764 FE0F 200D 1F48B 200D 1F468",
+            "1F469 200D 2764 FE0F 200D 1F48B 200D 1F468",
+            "1F469 200D 2764 FE0F 200D 1F48B 200D 1F469",
+            "1F468 200D 1F468 200D 1F466 200D 1F466",
+            "1F468 200D 1F468 200D 1F467 200D 1F466",
+            "1F468 200D 1F468 200D 1F467 200D 1F467",
+            "1F468 200D 1F469 200D 1F466 200D 1F466",
+            "1F468 200D 1F469 200D 1F467 200D 1F466",
+            "1F468 200D 1F469 200D 1F467 200D 1F467",
+            "1F469 200D 1F469 200D 1F466 200D 1F466",
+            "1F469 200D 1F469 200D 1F467 200D 1F466",
+            "1F469 200D 1F469 200D 1F467 200D 1F467",
+            "1F468 200D 2764 FE0F 200D 1F468",
+            "1F469 200D 2764 FE0F 200D 1F468",
+            "1F469 200D 2764 FE0F 200D 1F469",
+            "1F3F3 FE0F 200D 26A7 FE0F",
+            "1F468 200D 1F466 200D 1F466",
+            "1F468 200D 1F467 200D 1F466",
+            "1F468 200D 1F467 200D 1F467",
+            "1F468 200D 1F468 200D 1F466",
+            "1F468 200D 1F468 200D 1F467",
+            "1F468 200D 1F469 200D 1F466",
+            "1F468 200D 1F469 200D 1F467",
+            "1F469 200D 1F466 200D 1F466",
+            "1F469 200D 1F467 200D 1F466",
+            "1F469 200D 1F467 200D 1F467",
+            "1F469 200D 1F469 200D 1F466",
+            "1F469 200D 1F469 200D 1F467",
+            "1F3F3 FE0F 200D 1F308",
+            "1F3F4 200D 2620 FE0F",
+            "1F46F 200D 2640 FE0F",
+            "1F46F 200D 2642 FE0F",
+            "1F93C 200D 2640 FE0F",
+            "1F93C 200D 2642 FE0F",
+            "1F9DE 200D 2640 FE0F",
+            "1F9DE 200D 2642 FE0F",
+            "1F9DF 200D 2640 FE0F",
+            "1F9DF 200D 2642 FE0F",
+            "1F415 200D 1F9BA",
+            "1F441 200D 1F5E8",
+            "1F468 200D 1F466",
+            "1F468 200D 1F467",
+            "1F469 200D 1F466",
+            "1F469 200D 1F467",
+            "1F9D1 200D 1F91D 200D 1F9D1"
+    };
+
+    // 国旗になる地域指示子の組
+    private static final String FLAGS = "AC AD AE AF AG AI AL AM AO AQ AR AS AT AU AW AX AZ BA BB BD BE BF BG BH BI BJ BL BM BN BO BQ BR"
+            + " BS BT BV BW BY BZ CA CC CD CF CG CH CI CK CL CM CN CO CP CR CU CV CW CX CY CZ DE DG DJ DK DM DO DZ EA EC EE EG EH"
+            + " ER ES ET EU FI FJ FK FM FO FR GA GB GD GE GF GG GH GI GL GM GN GP GQ GR GS GT GU GW GY HK HM HN HR HT HU IC ID IE"
+            + " IL IM IN IO IQ IR IS IT JE JM JO JP KE KG KH KI KM KN KP KR KW KY KZ LA LB LC LI LK LR LS LT LU LV LY MA MC MD ME"
+            + " MF MG MH MK ML MM MN MO MP MQ MR MS MT MU MV MW MX MY MZ NA NC NE NF NG NI NL NO NP NR NU NZ OM PA PE PF PG PH PK"
+            + " PL PM PN PR PS PT PW PY QA RE RO RS RU RW SA SB SC SD SE SG SH SI SJ SK SL SM SN SO SR SS ST SV SX SY SZ TA TC TD"
+            + " TF TG TH TJ TK TL TM TN TO TR TT TV TW TZ UA UG UM UN US UY UZ VA VC VE VG VI VN VU WF WS XK YE YT ZA ZM ZW";
+
+    // 🏴 とタグで表すサブディビジョンの旗
+    private static final String[] SUBDIVISION_FLAGS = {"gbeng", "gbsct", "gbwls"};
+
+    private static final Node ROOT;
+    // 絵文字の始まりになりうる BMP の文字
+    private static final long[] BMP_STARTS = new long[0x10000 / 64];
+
+    static {
+        Builder builder = new Builder();
+
+        // 🧑🏻‍🤝‍🧑🏼 などの手をつないだ 2 人。男性同士と女性同士は肌の色が違う組み合わせだけ
+        for (int a = FIRST_SKIN_TONE; a <= LAST_SKIN_TONE; a++) {
+            for (int b = FIRST_SKIN_TONE; b <= LAST_SKIN_TONE; b++) {
+                if (a != b) {
+                    builder.add(MAN, a, ZWJ, HANDSHAKE, ZWJ, MAN, b);
+                    builder.add(WOMAN, a, ZWJ, HANDSHAKE, ZWJ, MAN, b);
+                    builder.add(WOMAN, a, ZWJ, HANDSHAKE, ZWJ, WOMAN, b);
+                }
+                builder.add(PERSON, a, ZWJ, HANDSHAKE, ZWJ, PERSON, b);
+            }
+        }
+        for (int cp = 0x1F46B; cp <= 0x1F46D; cp++) {
+            builder.add(cp);
+            for (int tone = FIRST_SKIN_TONE; tone <= LAST_SKIN_TONE; tone++)
+                builder.add(cp, tone);
+        }
+
+        // 職業
+        for (int base : new int[]{MAN, WOMAN, PERSON}) {
+            for (int tone = FIRST_SKIN_TONE - 1; tone <= LAST_SKIN_TONE; tone++) {
+                int[] prefix = tone < FIRST_SKIN_TONE ? new int[]{base, ZWJ} : new int[]{base, tone, ZWJ};
+                for (int profession : new int[]{0x2695, 0x2696, 0x2708})
+                    builder.add(prefix, profession, EMOJI_SELECTOR);
+                for (int i = 0; i < PROFESSIONS.length; i += 2) {
+                    for (int profession = PROFESSIONS[i]; profession <= PROFESSIONS[i + 1]; profession++)
+                        builder.add(prefix, profession);
+                }
+            }
+        }
+
+        // 性別の付いた人
+        for (int i = 0; i < GENDERED_WITH_SELECTOR.length; i += 2) {
+            for (int base = GENDERED_WITH_SELECTOR[i]; base <= GENDERED_WITH_SELECTOR[i + 1]; base++) {
+                for (int modifier = FIRST_SKIN_TONE - 1; modifier <= LAST_SKIN_TONE; modifier++) {
+                    int m = modifier < FIRST_SKIN_TONE ? EMOJI_SELECTOR : modifier;
+                    builder.add(base, m, ZWJ, 0x2640, EMOJI_SELECTOR);
+                    builder.add(base, m, ZWJ, 0x2642, EMOJI_SELECTOR);
+                }
+            }
+        }
+        for (int i = 0; i < GENDERED.length; i += 2) {
+            for (int base = GENDERED[i]; base <= GENDERED[i + 1]; base++) {
+                for (int tone = FIRST_SKIN_TONE - 1; tone <= LAST_SKIN_TONE; tone++) {
+                    int[] prefix = tone < FIRST_SKIN_TONE ? new int[]{base, ZWJ} : new int[]{base, tone, ZWJ};
+                    builder.add(prefix, 0x2640, EMOJI_SELECTOR);
+                    builder.add(prefix, 0x2642, EMOJI_SELECTOR);
+                }
+            }
+        }
+
+        for (String sequence : SEQUENCES) {
+            String[] hex = sequence.split(" ");
+            int[] codePoints = new int[hex.length];
+            for (int i = 0; i < hex.length; i++)
+                codePoints[i] = Integer.parseInt(hex[i], 16);
+            builder.add(codePoints);
+        }
+
+        // 1️⃣ や #⃣
+        for (char c : "#*0123456789".toCharArray()) {
+            builder.add(c, KEYCAP);
+            builder.add(c, EMOJI_SELECTOR, KEYCAP);
+        }
+
+        // ©️ などは異体字セレクタが必要
+        for (int i = 0; i < TEXT_WITH_SELECTOR.length; i += 2) {
+            for (int cp = TEXT_WITH_SELECTOR[i]; cp <= TEXT_WITH_SELECTOR[i + 1]; cp++)
+                builder.add(cp, EMOJI_SELECTOR);
+        }
+
+        for (String flag : SUBDIVISION_FLAGS) {
+            int[] codePoints = new int[flag.length() + 2];
+            codePoints[0] = 0x1F3F4;
+            for (int i = 0; i < flag.length(); i++)
+                codePoints[i + 1] = 0xE0000 + flag.charAt(i);
+            codePoints[codePoints.length - 1] = 0xE007F;
+            builder.add(codePoints);
+        }
+        for (int i = 0; i < FLAGS.length(); i += 3)
+            builder.add(REGIONAL_INDICATOR_A + FLAGS.charAt(i) - 'A', REGIONAL_INDICATOR_A + FLAGS.charAt(i + 1) - 'A');
+
+        ROOT = builder.root.freeze();
+
+        for (int cp : ROOT.codePoints) {
+            if (cp < 0x10000) setBmpStart(cp, cp);
+        }
+        for (int[] table : new int[][]{TEXT_DEFAULT, MODIFIER_BASES_TEXT_DEFAULT, MODIFIER_BASES, PRESENTATION}) {
+            for (int i = 0; i < table.length && table[i] < 0x10000; i += 2)
+                setBmpStart(table[i], Math.min(table[i + 1], 0xFFFF));
+        }
+        setBmpStart(EMOJI_SELECTOR, EMOJI_SELECTOR);
+        // サロゲートペアは match で調べる
+        setBmpStart(Character.MIN_HIGH_SURROGATE, Character.MAX_HIGH_SURROGATE);
+    }
+
+    private static void setBmpStart(int start, int end) {
+        for (int c = start; c <= end; c++)
+            BMP_STARTS[c >>> 6] |= 1L << c;
+    }
+
+    // c から絵文字が始まる可能性があるか。 false なら match は必ず -1 を返す
+    static boolean canStart(char c) {
+        return (BMP_STARTS[c >>> 6] & (1L << c)) != 0;
+    }
+
+    // text[index] から始まる絵文字の終わりの位置。絵文字でなければ -1
+    static int match(char[] text, int index, int end) {
+        int result = -1;
+
+        // 列挙した並び
+        Node node = ROOT;
+        for (int i = index; i < end; ) {
+            int cp = codePointAt(text, i, end);
+            int child = Arrays.binarySearch(node.codePoints, cp);
+            if (child < 0) break;
+            node = node.children[child];
+            i += Character.charCount(cp);
+            if (node.terminal) result = i;
+        }
+
+        // 1 文字の絵文字と、それに続く異体字セレクタや肌の色
+        int cp = codePointAt(text, index, end);
+        int next = index + Character.charCount(cp);
+
+        if (cp == EMOJI_SELECTOR || contains(PRESENTATION, cp)) {
+            result = Math.max(result, next);
+        }
+
+        if (contains(TEXT_DEFAULT, cp)) {
+            result = Math.max(result, eatEmojiSelector(text, next, end));
+        }
+
+        int baseEnd = contains(MODIFIER_BASES_TEXT_DEFAULT, cp) ? eatEmojiSelector(text, next, end)
+                : contains(MODIFIER_BASES, cp) ? next : -1;
+        if (baseEnd != -1) {
+            result = Math.max(result, eatSkinTone(text, baseEnd, end));
+        }
+
+        return result;
+    }
+
+    // 既定で文字として表示されるもの: U+FE0F があれば含め、 U+FE0E が続くなら絵文字ではない (-1)
+    private static int eatEmojiSelector(char[] text, int index, int end) {
+        if (index < end) {
+            if (text[index] == EMOJI_SELECTOR) return index + 1;
+            if (text[index] == TEXT_SELECTOR) return -1;
+        }
+        return index;
+    }
+
+    private static int eatSkinTone(char[] text, int index, int end) {
+        if (index + 1 < end) {
+            int cp = codePointAt(text, index, end);
+            if (cp >= FIRST_SKIN_TONE && cp <= LAST_SKIN_TONE) return index + 2;
+        }
+        return index;
+    }
+
+    private static boolean contains(int[] table, int cp) {
+        // 偶数番目の要素を探すので、見つからなければ挿入位置が奇数のとき範囲の中
+        int i = Arrays.binarySearch(table, cp);
+        return i >= 0 || ((-i - 1) & 1) == 1;
+    }
+
+    private static int codePointAt(char[] text, int index, int end) {
+        char c = text[index];
+        if (Character.isHighSurrogate(c) && index + 1 < end) {
+            char low = text[index + 1];
+            if (Character.isLowSurrogate(low)) return Character.toCodePoint(c, low);
+        }
+        return c;
+    }
+
+    // コードポイントの木の節。子はコードポイントの昇順
+    private static final class Node {
+        int[] codePoints;
+        Node[] children;
+        boolean terminal;
+    }
+
+    private static final class Builder {
+        final BuilderNode root = new BuilderNode();
+
+        void add(int[] prefix, int... codePoints) {
+            int[] sequence = Arrays.copyOf(prefix, prefix.length + codePoints.length);
+            System.arraycopy(codePoints, 0, sequence, prefix.length, codePoints.length);
+            this.add(sequence);
+        }
+
+        void add(int... codePoints) {
+            BuilderNode node = this.root;
+            for (int cp : codePoints) {
+                BuilderNode child = node.children.get(cp);
+                if (child == null) {
+                    child = new BuilderNode();
+                    node.children.put(cp, child);
+                }
+                node = child;
+            }
+            node.terminal = true;
+        }
+    }
+
+    private static final class BuilderNode {
+        final TreeMap<Integer, BuilderNode> children = new TreeMap<>();
+        boolean terminal;
+
+        Node freeze() {
+            Node node = new Node();
+            node.terminal = this.terminal;
+            node.codePoints = new int[this.children.size()];
+            node.children = new Node[this.children.size()];
+            int i = 0;
+            for (Integer cp : this.children.keySet()) {
+                node.codePoints[i] = cp;
+                node.children[i] = this.children.get(cp).freeze();
+                i++;
+            }
+            return node;
+        }
+    }
+}
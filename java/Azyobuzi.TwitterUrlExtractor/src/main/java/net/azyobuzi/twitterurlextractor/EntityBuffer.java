@@ -0,0 +1,369 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link Extractor#extract(String, EntityBuffer)} の結果を受け取る再利用可能なバッファ。
+ * 開始位置と長さを int[] に詰めて保持し、抽出中に使う作業領域も持つので、
+ * 同じインスタンスを使い回せば定常状態ではアロケーションが発生しない。
+ * スレッドセーフではないので、スレッドごとに用意すること。
+ */
+public final class EntityBuffer {
+    private static final int STRIDE = 9;
+    private static final int START_INDEX = 0;
+    private static final int LENGTH = 1;
+    private static final int TYPE = 2;
+    private static final int BYTE_START_INDEX = 3;
+    private static final int BYTE_LENGTH = 4;
+    private static final int TCO_ID_HIGH = 5;
+    private static final int TCO_ID_LOW = 6;
+    private static final int CODE_POINT_START_INDEX = 7;
+    private static final int CODE_POINT_LENGTH = 8;
+
+    private static final int DETAIL_STRIDE = 11;
+    private static final int SCHEME_LENGTH = 0;
+    private static final int HOST_START_INDEX = 1;
+    private static final int HOST_LENGTH = 2;
+    private static final int TLD_START_INDEX = 3;
+    private static final int TLD_TYPE = 4;
+    private static final int PORT_START_INDEX = 5;
+    private static final int PORT_LENGTH = 6;
+    private static final int PATH_START_INDEX = 7;
+    private static final int PATH_LENGTH = 8;
+    private static final int QUERY_START_INDEX = 9;
+    private static final int QUERY_LENGTH = 10;
+
+    private static final int[] EMPTY = new int[0];
+
+    // 作業領域として持ち続ける要素数の上限
+    static final int MAX_RETAINED_SCRATCH_LENGTH = 64 * 1024;
+
+    private int[] entities;
+    private int count;
+    private boolean hasByteIndexes;
+    private int[] details;
+    private boolean hasUrlDetails;
+    private boolean hasCodePointIndexes;
+    // ここより前のサロゲートペアの数を数え終えている位置
+    private int codePointCursor;
+    private int surrogatePairCount;
+
+    final IntList dots = new IntList();
+    final ParenMatcher parens = new ParenMatcher();
+    private char[] chars;
+    private byte[] bytes;
+    private int[] byteIndexes;
+
+    public EntityBuffer() {
+        this.entities = EMPTY;
+        this.details = EMPTY;
+    }
+
+    public EntityBuffer(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        this.entities = new int[capacity * STRIDE];
+        this.details = EMPTY;
+    }
+
+    public int size() {
+        return this.count;
+    }
+
+    public int getStartIndex(int index) {
+        return this.entities[this.offsetOf(index) + START_INDEX];
+    }
+
+    public int getLength(int index) {
+        return this.entities[this.offsetOf(index) + LENGTH];
+    }
+
+    // EntityInfo.URL などの種類
+    public int getType(int index) {
+        return this.entities[this.offsetOf(index) + TYPE];
+    }
+
+    // UTF-8 から抽出したときのみ有効
+    public int getByteStartIndex(int index) {
+        int offset = this.offsetOf(index);
+        this.checkByteIndexes();
+        return this.entities[offset + BYTE_START_INDEX];
+    }
+
+    public int getByteLength(int index) {
+        int offset = this.offsetOf(index);
+        this.checkByteIndexes();
+        return this.entities[offset + BYTE_LENGTH];
+    }
+
+    public boolean hasByteIndexes() {
+        return this.hasByteIndexes;
+    }
+
+    // Extractor#extractWithCodePointIndexes などで抽出したときのみ有効。
+    // サロゲートペアを 1 文字として数えた位置で、 Character.codePointCount と同じく対になっていないサロゲートも 1 文字になる。
+    public int getCodePointStartIndex(int index) {
+        int offset = this.offsetOf(index);
+        this.checkCodePointIndexes();
+        return this.entities[offset + CODE_POINT_START_INDEX];
+    }
+
+    public int getCodePointLength(int index) {
+        int offset = this.offsetOf(index);
+        this.checkCodePointIndexes();
+        return this.entities[offset + CODE_POINT_LENGTH];
+    }
+
+    public boolean hasCodePointIndexes() {
+        return this.hasCodePointIndexes;
+    }
+
+    // https?://t.co/xxxxxxxxxx の短縮コードを TcoCache.toId で詰めた値。 t.co の URL でなければ TcoCache.NO_ID
+    public long getTcoId(int index) {
+        int offset = this.offsetOf(index);
+        return ((long) this.entities[offset + TCO_ID_HIGH] << 32) | (this.entities[offset + TCO_ID_LOW] & 0xffffffffL);
+    }
+
+    // 以下は Extractor#extractWithDetails で抽出したときのみ有効。
+    // 位置は getStartIndex と同じくテキスト上のもので、その部分がなければ開始位置は -1 、長さは 0 になる。
+
+    // http なら 4 、 https なら 5 、スキームがなければ 0 。スキームは URL の先頭から始まる。
+    public int getSchemeLength(int index) {
+        return this.getDetail(index, SCHEME_LENGTH);
+    }
+
+    public int getHostStartIndex(int index) {
+        return this.getDetail(index, HOST_START_INDEX);
+    }
+
+    public int getHostLength(int index) {
+        return this.getDetail(index, HOST_LENGTH);
+    }
+
+    // TLD はホストの最後にある
+    public int getTldStartIndex(int index) {
+        return this.getDetail(index, TLD_START_INDEX);
+    }
+
+    public int getTldLength(int index) {
+        int offset = this.detailOffsetOf(index);
+        return this.details[offset + HOST_START_INDEX] + this.details[offset + HOST_LENGTH] - this.details[offset + TLD_START_INDEX];
+    }
+
+    // TldTable.GTLD, CCTLD, SPECIAL_CCTLD のいずれか
+    public int getTldType(int index) {
+        return this.getDetail(index, TLD_TYPE);
+    }
+
+    // : の後ろの数字部分
+    public int getPortStartIndex(int index) {
+        return this.getDetail(index, PORT_START_INDEX);
+    }
+
+    public int getPortLength(int index) {
+        return this.getDetail(index, PORT_LENGTH);
+    }
+
+    // 先頭の / を含む
+    public int getPathStartIndex(int index) {
+        return this.getDetail(index, PATH_START_INDEX);
+    }
+
+    public int getPathLength(int index) {
+        return this.getDetail(index, PATH_LENGTH);
+    }
+
+    // ? の後ろの部分。 ? だけなら長さは 0
+    public int getQueryStartIndex(int index) {
+        return this.getDetail(index, QUERY_START_INDEX);
+    }
+
+    public int getQueryLength(int index) {
+        return this.getDetail(index, QUERY_LENGTH);
+    }
+
+    public boolean hasUrlDetails() {
+        return this.hasUrlDetails;
+    }
+
+    public void clear() {
+        this.count = 0;
+        this.hasByteIndexes = false;
+        this.hasUrlDetails = false;
+        this.hasCodePointIndexes = false;
+    }
+
+    public List<EntityInfo> toList() {
+        List<EntityInfo> result = new ArrayList<>(this.count);
+        for (int i = 0; i < this.count; i++)
+            result.add(new EntityInfo(this.getStartIndex(i), this.getLength(i), this.getType(i)));
+        return result;
+    }
+
+    void add(int startIndex, int length) {
+        this.add(startIndex, length, EntityInfo.URL);
+    }
+
+    void add(int startIndex, int length, int type) {
+        int offset = this.count * STRIDE;
+        if (offset == this.entities.length) {
+            int[] newArray = new int[offset == 0 ? 4 * STRIDE : offset * 2];
+            System.arraycopy(this.entities, 0, newArray, 0, offset);
+            this.entities = newArray;
+        }
+
+        this.entities[offset + START_INDEX] = startIndex;
+        this.entities[offset + LENGTH] = length;
+        this.entities[offset + TYPE] = type;
+        this.entities[offset + TCO_ID_HIGH] = (int) (TcoCache.NO_ID >>> 32);
+        this.entities[offset + TCO_ID_LOW] = (int) TcoCache.NO_ID;
+        this.count++;
+    }
+
+    // 最後に追加した URL の t.co の ID
+    void setTcoId(long id) {
+        int offset = (this.count - 1) * STRIDE;
+        this.entities[offset + TCO_ID_HIGH] = (int) (id >>> 32);
+        this.entities[offset + TCO_ID_LOW] = (int) id;
+    }
+
+    // clear の後に呼ぶと、以降の URL の詳細を記録する
+    void recordUrlDetails() {
+        this.hasUrlDetails = true;
+    }
+
+    // clear の後に呼ぶと、以降のエンティティの code point での位置を記録する
+    void recordCodePointIndexes() {
+        this.hasCodePointIndexes = true;
+        this.codePointCursor = 0;
+        this.surrogatePairCount = 0;
+    }
+
+    // 最後に追加したエンティティの code point での位置。
+    // エンティティは前から順に追加されるので、前回の位置から数え進めれば、全体で text を 1 回読むだけで済む。
+    void setCodePointIndexes(char[] text, int begin) {
+        int offset = (this.count - 1) * STRIDE;
+        int startIndex = this.entities[offset + START_INDEX];
+        int endIndex = startIndex + this.entities[offset + LENGTH];
+
+        if (startIndex < this.codePointCursor) {
+            this.codePointCursor = 0;
+            this.surrogatePairCount = 0;
+        }
+        this.countSurrogatePairs(text, begin, startIndex);
+        int pairCountBeforeStart = this.surrogatePairCount;
+        this.countSurrogatePairs(text, begin, endIndex);
+        int pairCountInEntity = this.surrogatePairCount - pairCountBeforeStart;
+
+        // 開始位置で終わるペアは、前の部分とエンティティのそれぞれで 1 文字として数える
+        if (startIndex > 0 && startIndex < endIndex
+                && Character.isHighSurrogate(text[begin + startIndex - 1]) && Character.isLowSurrogate(text[begin + startIndex]))
+            pairCountInEntity--;
+
+        this.entities[offset + CODE_POINT_START_INDEX] = startIndex - pairCountBeforeStart;
+        this.entities[offset + CODE_POINT_LENGTH] = endIndex - startIndex - pairCountInEntity;
+    }
+
+    // index より前で終わるサロゲートペアを数える
+    private void countSurrogatePairs(char[] text, int begin, int index) {
+        int count = this.surrogatePairCount;
+        for (int i = Math.max(this.codePointCursor, 1); i < index; i++) {
+            if (Character.isLowSurrogate(text[begin + i]) && Character.isHighSurrogate(text[begin + i - 1]))
+                count++;
+        }
+        this.surrogatePairCount = count;
+        if (index > this.codePointCursor) this.codePointCursor = index;
+    }
+
+    // 最後に追加した URL の詳細
+    void setUrlDetails(int schemeLength, int hostStartIndex, int hostLength, int tldStartIndex, int tldType,
+                       int portStartIndex, int portLength, int pathStartIndex, int pathLength, int queryStartIndex, int queryLength) {
+        int offset = (this.count - 1) * DETAIL_STRIDE;
+        if (offset >= this.details.length) {
+            int[] newArray = new int[Math.max(this.entities.length / STRIDE * DETAIL_STRIDE, offset + DETAIL_STRIDE)];
+            System.arraycopy(this.details, 0, newArray, 0, offset);
+            this.details = newArray;
+        }
+
+        int[] details = this.details;
+        details[offset + SCHEME_LENGTH] = schemeLength;
+        details[offset + HOST_START_INDEX] = hostStartIndex;
+        details[offset + HOST_LENGTH] = hostLength;
+        details[offset + TLD_START_INDEX] = tldStartIndex;
+        details[offset + TLD_TYPE] = tldType;
+        details[offset + PORT_START_INDEX] = portStartIndex;
+        details[offset + PORT_LENGTH] = portLength;
+        details[offset + PATH_START_INDEX] = pathStartIndex;
+        details[offset + PATH_LENGTH] = pathLength;
+        details[offset + QUERY_START_INDEX] = queryStartIndex;
+        details[offset + QUERY_LENGTH] = queryLength;
+    }
+
+    // String などを char[] にコピーするための作業領域。同じ EntityBuffer を使い回す限り、大きくなった後は確保しない
+    char[] chars(int length) {
+        if (this.chars == null || this.chars.length < length)
+            this.chars = new char[Math.max(length, 256)];
+        return this.chars;
+    }
+
+    byte[] bytes(int length) {
+        if (this.bytes == null || this.bytes.length < length)
+            this.bytes = new byte[Math.max(length, 256)];
+        return this.bytes;
+    }
+
+    int[] byteIndexes(int length) {
+        if (this.byteIndexes == null || this.byteIndexes.length < length)
+            this.byteIndexes = new int[Math.max(length, 256)];
+        return this.byteIndexes;
+    }
+
+    // MAX_RETAINED_SCRATCH_LENGTH を超える作業領域を捨てる。
+    // 呼び出し元の EntityBuffer は触らず、 Extractor がスレッドごとに使い回すものだけで、使い終わったら呼ぶ
+    void releaseScratch() {
+        if (this.chars != null && this.chars.length > MAX_RETAINED_SCRATCH_LENGTH) this.chars = null;
+        if (this.bytes != null && this.bytes.length > MAX_RETAINED_SCRATCH_LENGTH) this.bytes = null;
+        if (this.byteIndexes != null && this.byteIndexes.length > MAX_RETAINED_SCRATCH_LENGTH) this.byteIndexes = null;
+    }
+
+    // UTF-16 の位置から UTF-8 のバイト位置を埋める
+    void setByteIndexes(int[] byteIndexes) {
+        int[] entities = this.entities;
+        for (int offset = 0, end = this.count * STRIDE; offset < end; offset += STRIDE) {
+            int startIndex = entities[offset + START_INDEX];
+            int byteStartIndex = byteIndexes[startIndex];
+            entities[offset + BYTE_START_INDEX] = byteStartIndex;
+            entities[offset + BYTE_LENGTH] = byteIndexes[startIndex + entities[offset + LENGTH]] - byteStartIndex;
+        }
+        this.hasByteIndexes = true;
+    }
+
+    private void checkByteIndexes() {
+        if (!this.hasByteIndexes)
+            throw new IllegalStateException("The entities were not extracted from UTF-8 bytes.");
+    }
+
+    private void checkCodePointIndexes() {
+        if (!this.hasCodePointIndexes)
+            throw new IllegalStateException("The entities were not extracted with code point indexes.");
+    }
+
+    private int getDetail(int index, int field) {
+        return this.details[this.detailOffsetOf(index) + field];
+    }
+
+    private int detailOffsetOf(int index) {
+        if (!this.hasUrlDetails)
+            throw new IllegalStateException("The entities were not extracted with details.");
+        if (index < 0 || index >= this.count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+        return index * DETAIL_STRIDE;
+    }
+
+    private int offsetOf(int index) {
+        if (index < 0 || index >= this.count)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.count);
+        return index * STRIDE;
+    }
+}
@@ -1,8 +1,14 @@
 package net.azyobuzi.twitterurlextractor;
 
 public class EntityInfo {
+    public static final int URL = 0;
+    public static final int HASHTAG = 1;
+    public static final int MENTION = 2;
+    public static final int CASHTAG = 3;
+
     private int startIndex;
     private int length;
+    private int type;
 
     public int getStartIndex() {
         return this.startIndex;
@@ -12,8 +18,18 @@ public class EntityInfo {
         return this.length;
     }
 
+    // URL, HASHTAG, MENTION, CASHTAG のいずれか
+    public int getType() {
+        return this.type;
+    }
+
     public EntityInfo(int startIndex, int length) {
+        this(startIndex, length, URL);
+    }
+
+    public EntityInfo(int startIndex, int length, int type) {
         this.startIndex = startIndex;
         this.length = length;
+        this.type = type;
     }
 }
@@ -0,0 +1,280 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * リツイートやコピペのように同じ本文が何度も来るときに、 {@link Extractor#extract(String, EntityBuffer)} の結果を再利用する。
+ * String.hashCode と長さで探して equals で照合するので、別のインスタンスでも中身が同じなら当たる。
+ * 結果は開始位置・長さ・t.co の ID を詰めた int[] で持ち、本文の String と合わせた推定メモリ使用量が maxBytes を超えたら
+ * CLOCK 法で最近使われていないものを追い出す。
+ * ロックを分割したストライプに振り分けるので、複数のスレッドから同時に使える。
+ * 結果には抽出に使った TLD の表の版を付けて、 {@link Extractor#setTldTable(TldTable)} で差し替えられたら使わない。
+ * . を含まない本文は URL がなく、走査するほうが速いので、キャッシュを通さない。
+ */
+public final class ExtractionCache {
+    // エントリーごとの配列の要素と String 、 int[] のヘッダーの分の推定バイト数
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private static final int START_INDEX = 0;
+    private static final int LENGTH = 1;
+    private static final int TCO_ID_HIGH = 2;
+    private static final int TCO_ID_LOW = 3;
+    private static final int STRIDE = 4;
+
+    private static final int[] EMPTY = new int[0];
+
+    private static final ThreadLocal<EntityBuffer> localBuffer = new ThreadLocal<EntityBuffer>() {
+        @Override
+        protected EntityBuffer initialValue() {
+            return new EntityBuffer();
+        }
+    };
+
+    private final Extractor extractor;
+    private final long maxBytes;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    // TLD の表が差し替えられたら結果を捨てる。正しさはエントリーごとに持つ版で保つので、捨てるのはメモリのため
+    private volatile int tldTableVersion;
+
+    public ExtractionCache(Extractor extractor, long maxBytes) {
+        if (extractor == null)
+            throw new IllegalArgumentException("extractor is null");
+        if (maxBytes < 1)
+            throw new IllegalArgumentException("maxBytes must be positive");
+
+        this.extractor = extractor;
+        this.maxBytes = maxBytes;
+        this.tldTableVersion = extractor.getTldTableVersion();
+
+        int stripeCount = ClockTable.stripeCount(maxBytes / (64 * 1024));
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++)
+            this.stripes[i] = new Stripe(maxBytes / stripeCount);
+    }
+
+    public Extractor getExtractor() {
+        return this.extractor;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public List<EntityInfo> extract(String text) {
+        EntityBuffer buffer = localBuffer.get();
+        this.extract(text, buffer);
+        buffer.releaseScratch();
+        return buffer.toList();
+    }
+
+    public int extract(String text, EntityBuffer buffer) {
+        if (text == null || text.indexOf('.') == -1)
+            return this.extractor.extract(text, buffer);
+
+        // 表の差し替え中は通さない
+        int version = this.extractor.getTldTableVersion();
+        if ((version & 1) != 0)
+            return this.extractor.extract(text, buffer);
+        if (version - this.tldTableVersion > 0) {
+            this.tldTableVersion = version;
+            this.clear();
+        }
+
+        int hash = ClockTable.mix(text.hashCode());
+        Stripe stripe = this.stripes[hash & this.stripeMask];
+        int[] entities = stripe.get(text, hash, version);
+
+        if (entities != null) {
+            buffer.clear();
+            for (int i = 0; i < entities.length; i += STRIDE) {
+                buffer.add(entities[i + START_INDEX], entities[i + LENGTH]);
+                if (entities[i + TCO_ID_HIGH] != (int) (TcoCache.NO_ID >>> 32) || entities[i + TCO_ID_LOW] != (int) TcoCache.NO_ID)
+                    buffer.setTcoId(((long) entities[i + TCO_ID_HIGH] << 32) | (entities[i + TCO_ID_LOW] & 0xffffffffL));
+            }
+            return buffer.size();
+        }
+
+        // 抽出中に表が差し替えられたら、どちらの表を使ったか分からないので保存しない
+        int count = this.extractor.extract(text, buffer);
+        if (this.extractor.getTldTableVersion() == version)
+            stripe.put(text, hash, version, pack(buffer));
+        return count;
+    }
+
+    private static int[] pack(EntityBuffer buffer) {
+        int count = buffer.size();
+        if (count == 0) return EMPTY;
+
+        int[] entities = new int[count * STRIDE];
+        for (int i = 0; i < count; i++) {
+            int offset = i * STRIDE;
+            long tcoId = buffer.getTcoId(i);
+            entities[offset + START_INDEX] = buffer.getStartIndex(i);
+            entities[offset + LENGTH] = buffer.getLength(i);
+            entities[offset + TCO_ID_HIGH] = (int) (tcoId >>> 32);
+            entities[offset + TCO_ID_LOW] = (int) tcoId;
+        }
+        return entities;
+    }
+
+    public long getHitCount() {
+        long result = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                result += x.hitCount;
+            }
+        }
+        return result;
+    }
+
+    public long getMissCount() {
+        long result = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                result += x.missCount;
+            }
+        }
+        return result;
+    }
+
+    public long getEvictionCount() {
+        long result = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                result += x.evictionCount;
+            }
+        }
+        return result;
+    }
+
+    // 推定メモリ使用量
+    public long getUsedBytes() {
+        long result = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                result += x.usedBytes;
+            }
+        }
+        return result;
+    }
+
+    public int size() {
+        int result = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                result += x.size();
+            }
+        }
+        return result;
+    }
+
+    // 統計は残す
+    public void clear() {
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                x.clear();
+            }
+        }
+    }
+
+    private static long sizeOf(String text, int[] entities) {
+        return ENTRY_OVERHEAD + 2L * text.length() + 4L * entities.length;
+    }
+
+    private static final class Stripe {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private final long maxBytes;
+        private final ClockTable table = new ClockTable(INITIAL_CAPACITY);
+
+        // エントリーごとの情報。 versions は抽出に使った TLD の表の版
+        private String[] texts = new String[INITIAL_CAPACITY];
+        private int[][] results = new int[INITIAL_CAPACITY][];
+        private int[] versions = new int[INITIAL_CAPACITY];
+        private long usedBytes;
+
+        long hitCount;
+        long missCount;
+        long evictionCount;
+
+        Stripe(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized int[] get(String text, int hash, int version) {
+            int entry = this.find(text, hash);
+            if (entry == ClockTable.NOT_FOUND || this.versions[entry] != version) {
+                this.missCount++;
+                return null;
+            }
+
+            this.hitCount++;
+            this.table.touch(entry);
+            return this.results[entry];
+        }
+
+        synchronized void put(String text, int hash, int version, int[] entities) {
+            long bytes = sizeOf(text, entities);
+            if (bytes > this.maxBytes) return;
+
+            // 別の版の表で抽出したものは置き換える
+            int entry = this.find(text, hash);
+            if (entry != ClockTable.NOT_FOUND) {
+                if (this.versions[entry] == version) return;
+                this.table.remove(entry);
+                this.release(entry);
+            }
+
+            while (this.usedBytes + bytes > this.maxBytes) {
+                this.release(this.table.evict());
+                this.evictionCount++;
+            }
+
+            entry = this.table.add(hash);
+            if (entry == ClockTable.NOT_FOUND) {
+                this.table.grow();
+                int capacity = this.table.capacity();
+                this.texts = Arrays.copyOf(this.texts, capacity);
+                this.results = Arrays.copyOf(this.results, capacity);
+                this.versions = Arrays.copyOf(this.versions, capacity);
+                entry = this.table.add(hash);
+            }
+
+            this.texts[entry] = text;
+            this.results[entry] = entities;
+            this.versions[entry] = version;
+            this.usedBytes += bytes;
+        }
+
+        int size() {
+            return this.table.size();
+        }
+
+        void clear() {
+            this.table.clear();
+            Arrays.fill(this.texts, null);
+            Arrays.fill(this.results, null);
+            this.usedBytes = 0;
+        }
+
+        // 表から削除したエントリーの中身を捨てる
+        private void release(int entry) {
+            this.usedBytes -= sizeOf(this.texts[entry], this.results[entry]);
+            this.texts[entry] = null;
+            this.results[entry] = null;
+        }
+
+        private int find(String text, int hash) {
+            ClockTable table = this.table;
+            for (int entry = table.first(hash); entry != ClockTable.NOT_FOUND; entry = table.next()) {
+                String x = this.texts[entry];
+                if (x == text || x.equals(text)) return entry;
+            }
+            return ClockTable.NOT_FOUND;
+        }
+    }
+}
@@ -1,13 +1,15 @@
 package net.azyobuzi.twitterurlextractor;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.file.Path;
 import java.text.Normalizer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class Extractor {
-    private static final int GTLD = 0;
-    private static final int CCTLD = 1 << 31;
-    private static final int SPECIAL_CCTLD = 1 << 30;
-
     private static final int CHAR_ALPHABET = 1;
     private static final int CHAR_NUMBER = 1 << 1;
     private static final int CHAR_AT = 1 << 2;
@@ -19,6 +21,7 @@ public class Extractor {
     private static final int CHAR_LPAREN = 1 << 8;
     private static final int CHAR_RPAREN = 1 << 9;
     private static final int CHAR_DOMAIN_SYMBOL = 1 << 10;
+    private static final int CHAR_ENTITY_START = 1 << 11;
 
     private static final int[] ASCII_TABLE =
             {
@@ -57,8 +60,8 @@ public class Extractor {
                     0, // Space
                     CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // !
                     0, // "
-                    CHAR_NOT_PRECEDING_SYMBOL | CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_ENDING_SYMBOL, // #
-                    CHAR_NOT_PRECEDING_SYMBOL | CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // $
+                    CHAR_NOT_PRECEDING_SYMBOL | CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_ENDING_SYMBOL | CHAR_ENTITY_START, // #
+                    CHAR_NOT_PRECEDING_SYMBOL | CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL | CHAR_ENTITY_START, // $
                     CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // %
                     CHAR_PATH_SYMBOL | CHAR_QUERY_ENDING_SYMBOL, // &
                     CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // '
@@ -68,7 +71,7 @@ public class Extractor {
                     CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_SYMBOL, // +
                     CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // ,
                     CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_SYMBOL | CHAR_DOMAIN_SYMBOL, // -
-                    CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // .
+                    CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL | CHAR_ENTITY_START, // .
                     CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_ENDING_SYMBOL, // /
                     CHAR_NUMBER, // 0
                     CHAR_NUMBER, // 1
@@ -86,7 +89,7 @@ public class Extractor {
                     CHAR_PATH_ENDING_SYMBOL | CHAR_QUERY_ENDING_SYMBOL, // =
                     0, // >
                     CHAR_QUERY_SYMBOL, // ?
-                    CHAR_AT | CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL, // @
+                    CHAR_AT | CHAR_PATH_SYMBOL | CHAR_QUERY_SYMBOL | CHAR_ENTITY_START, // @
                     CHAR_ALPHABET, // A
                     CHAR_ALPHABET, // B
                     CHAR_ALPHABET, // C
@@ -154,94 +157,91 @@ public class Extractor {
 
     private static final int ASCII_TABLE_LENGTH = 128;
 
-    private final IntIntMap4a tldMap;
-    private int longestTldLength;
-    private int shortestTldLength = Integer.MAX_VALUE;
-
-    public Extractor(List<String> gTlds, List<String> ccTlds, List<String> specialCcTlds) {
-        int size = 0;
-        if (gTlds != null) size += gTlds.size();
-        if (ccTlds != null) size += ccTlds.size();
-        if (specialCcTlds != null) size += specialCcTlds.size();
-        tldMap = new IntIntMap4a(size, 0.75f);
+    private static final int MIN_BATCH_CHUNK_SIZE = 64;
 
-        if (gTlds != null) {
-            for (String x : gTlds)
-                this.addTld(x, GTLD);
+    // List を返す API 用の作業領域
+    private static final ThreadLocal<EntityBuffer> localBuffer = new ThreadLocal<EntityBuffer>() {
+        @Override
+        protected EntityBuffer initialValue() {
+            return new EntityBuffer();
         }
+    };
 
-        if (specialCcTlds != null) {
-            for (String x : specialCcTlds)
-                this.addTld(x, SPECIAL_CCTLD);
-        } else {
-            specialCcTlds = new ArrayList<>();
-        }
+    // 実行中に差し替えられる。 1 回の抽出では最初に読んだものだけを使う
+    private volatile TldTable tldTable;
+    private volatile ExtractorMetrics metrics;
 
-        if (ccTlds != null) {
-            L:
-            for (String x : ccTlds) {
-                for (String y : specialCcTlds) {
-                    if (x.equalsIgnoreCase(y)) continue L;
-                }
+    // 差し替えの前後で 1 ずつ増やすので、差し替え中は奇数になる
+    private volatile int tldTableVersion;
 
-                this.addTld(x, CCTLD);
-            }
-        }
+    public Extractor(List<String> gTlds, List<String> ccTlds, List<String> specialCcTlds) {
+        this(TldTable.create(gTlds, ccTlds, specialCcTlds));
     }
 
     public Extractor(List<String> gTlds, List<String> ccTlds) {
-        this(gTlds, ccTlds, Arrays.asList("co", "tv"));
+        this(TldTable.create(gTlds, ccTlds));
     }
 
-    private static int toLower(char c) {
-        return c <= 'Z' && c >= 'A' ? (c + 32) : c;
+    // 表は不変なので、複数のインスタンスで共有してよい
+    public Extractor(TldTable tldTable) {
+        if (tldTable == null)
+            throw new IllegalArgumentException("tldTable is null");
+        this.tldTable = tldTable;
     }
 
-    private static int getHashCode(CharSequence str) {
-        int hash1 = 5381;
-        int hash2 = hash1;
-        int len = str.length();
-
-        for (int i = 0; i < len; ) {
-            hash1 = ((hash1 << 5) + hash1) ^ toLower(str.charAt(i++));
-            if (i >= len) break;
-            hash2 = ((hash2 << 5) + hash2) ^ toLower(str.charAt(i++));
-        }
+    public TldTable getTldTable() {
+        return this.tldTable;
+    }
 
-        return hash1 + hash2 * 1566083941;
+    // 他のスレッドで実行中の抽出は、差し替える前の表を使い続ける
+    public synchronized void setTldTable(TldTable tldTable) {
+        if (tldTable == null)
+            throw new IllegalArgumentException("tldTable is null");
+        this.tldTableVersion++;
+        this.tldTable = tldTable;
+        this.tldTableVersion++;
     }
 
-    private void addTld(CharSequence tld, int type) {
-        int len = tld.length();
+    // 抽出の前後で同じ偶数が得られたら、その間の抽出はすべてその版の表を使っている
+    int getTldTableVersion() {
+        return this.tldTableVersion;
+    }
 
-        // フラグを持たせるスペースを確保
-        if ((len & 0b11 << 30) != 0)
-            throw new IllegalArgumentException("Too long TLD: " + tld);
+    // TldTable.writeTo で書き出したファイルから表を読み込んで差し替える
+    public void loadTldTable(Path file) throws IOException {
+        this.setTldTable(TldTable.readFrom(file));
+    }
 
-        if (len > this.longestTldLength)
-            this.longestTldLength = len;
-        else if (len < this.shortestTldLength)
-            this.shortestTldLength = len;
+    public ExtractorMetrics getMetrics() {
+        return this.metrics;
+    }
 
-        this.tldMap.put(getHashCode(tld), type | len);
+    // null なら記録をやめる
+    public void setMetrics(ExtractorMetrics metrics) {
+        this.metrics = metrics;
     }
 
-    private static boolean isValidDomainChar(char c) {
-        return c < ASCII_TABLE_LENGTH
-                ? (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_DOMAIN_SYMBOL)) != 0
-                : !((c >= '\u2000' && c <= '\u206F') || c == '\u00A0' || c == '\u1680' || c == '\u3000');
+    private static int toLower(char c) {
+        return TldTable.toLower(c);
     }
 
-    private static boolean isAccentChar(char c) {
-        return (c >= '\u00c0' && c <= '\u00d6') || (c >= '\u00d8' && c <= '\u00f6') || (c >= '\u00f8' && c <= '\u024f')
-                || c == '\u0253' || c == '\u0254' || c == '\u0256' || c == '\u0257' || c == '\u0259' || c == '\u025b' || c == '\u0263' || c == '\u0268' || c == '\u026f' || c == '\u0272' || c == '\u0289' || c == '\u028b'
-                || c == '\u02bb'
-                || (c >= '\u0300' && c <= '\u036f')
-                || (c >= '\u1e00' && c <= '\u1eff');
+    private static boolean isAsciiDomainChar(char c) {
+        return (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_DOMAIN_SYMBOL)) != 0;
     }
 
-    private static boolean isUnicodeDomainChar(char c) {
-        return c > 0x7F && !isAccentChar(c);
+    // text[index] の UnicodeTable での種類。サロゲートペアの片方なら、ペアのコードポイントで判定する
+    private static int unicodeFlagsAt(char[] text, int index, int begin, int end) {
+        char c = text[index];
+        if (c < Character.MIN_SURROGATE || c > Character.MAX_SURROGATE)
+            return UnicodeTable.get(c);
+
+        if (Character.isHighSurrogate(c)) {
+            if (index + 1 < end && Character.isLowSurrogate(text[index + 1]))
+                return UnicodeTable.get(Character.toCodePoint(c, text[index + 1]));
+        } else if (index > begin && Character.isHighSurrogate(text[index - 1])) {
+            return UnicodeTable.get(Character.toCodePoint(text[index - 1], c));
+        }
+        return UnicodeTable.get(c);
     }
 
     private static boolean isAlnumAt(char c) {
@@ -252,26 +252,44 @@ public class Extractor {
         return c < ASCII_TABLE_LENGTH && (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER)) != 0;
     }
 
-    private static boolean isPrecedingChar(char c) {
+    private static boolean isAsciiPrecedingChar(char c) {
+        return (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_NOT_PRECEDING_SYMBOL)) == 0;
+    }
+
+    private static boolean isPrecedingCharAt(char[] text, int index, int begin, int end) {
+        char c = text[index];
         return c < ASCII_TABLE_LENGTH
-                ? (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_NOT_PRECEDING_SYMBOL)) == 0
-                : !(c == '＠' || (c >= '\u202A' && c <= '\u202E'));
+                ? isAsciiPrecedingChar(c)
+                : (unicodeFlagsAt(text, index, begin, end) & UnicodeTable.PRECEDING) != 0;
     }
 
-    private static boolean isCyrillicScript(char c) {
-        return (c >= '\u0400' && c <= '\u052F')
-                || (c >= '\u2DE0' && c <= '\u2DFF') || (c >= '\uA640' && c <= '\uA69F')
-                || c == '\u1D2B' || c == '\u1D78' || c == '\uFE2E' || c == '\uFE2F';
+    // パスに使える ASCII 以外の文字
+    private static boolean isUnicodePathCharAt(char[] text, int index, int begin, int end) {
+        return (unicodeFlagsAt(text, index, begin, end) & (UnicodeTable.CYRILLIC | UnicodeTable.ACCENT)) != 0;
+    }
+
+    private static int indexOf(char[] text, char c, int startIndex, int end) {
+        for (int i = startIndex; i < end; i++) {
+            if (text[i] == c) return i;
+        }
+        return -1;
     }
 
-    private static int eatPath(String text, int startIndex) {
+    private static int indexOf(byte[] text, byte b, int startIndex, int end) {
+        for (int i = startIndex; i < end; i++) {
+            if (text[i] == b) return i;
+        }
+        return -1;
+    }
+
+    private static int eatPath(char[] text, int startIndex, int end, ParenMatcher parens) {
         int lastEndingCharIndex = -1;
         int lastParenStartIndex = -1;
         int lastLengthInParen = 0;
 
         L:
-        for (int i = startIndex; i < text.length(); i++) {
-            char c = text.charAt(i);
+        for (int i = startIndex; i < end; i++) {
+            char c = text[i];
             if (c < ASCII_TABLE_LENGTH) {
                 switch (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_PATH_ENDING_SYMBOL | CHAR_PATH_SYMBOL | CHAR_LPAREN)) {
                     case 0:
@@ -279,7 +297,7 @@ public class Extractor {
                     case CHAR_PATH_SYMBOL:
                         break;
                     case CHAR_LPAREN:
-                        lastLengthInParen = eatPathInParen(text, i + 1);
+                        lastLengthInParen = eatPathInParen(text, i, end, parens);
                         if (lastLengthInParen == 0) break L;
                         lastParenStartIndex = i;
                         i += lastLengthInParen;
@@ -288,7 +306,7 @@ public class Extractor {
                         lastEndingCharIndex = i;
                         break;
                 }
-            } else if (isCyrillicScript(c) || isAccentChar(c)) {
+            } else if (isUnicodePathCharAt(text, i, startIndex, end)) {
                 lastEndingCharIndex = i;
             } else {
                 break L;
@@ -304,36 +322,53 @@ public class Extractor {
         return lastEndingCharIndex == -1 ? 0 : lastEndingCharIndex - startIndex + 1;
     }
 
-    private static int eatPathInParen(String text, int startIndex) {
+    // text[index] の ( の次から対応する ) までの長さ。閉じていなければ 0
+    private static int eatPathInParen(char[] text, int index, int end, ParenMatcher parens) {
+        int closeIndex = parens.get(index);
+        if (closeIndex == ParenMatcher.UNKNOWN) {
+            matchParens(text, index, end, parens);
+            closeIndex = parens.get(index);
+        }
+        return closeIndex == ParenMatcher.NOT_CLOSED ? 0 : closeIndex - index;
+    }
+
+    // text[index] の ( から、すべての ( が閉じるか、パスに使えない文字が来るまで走査して、対応を記録する
+    private static void matchParens(char[] text, int index, int end, ParenMatcher parens) {
+        parens.startRegion(index);
+        parens.open(index);
+
+        int i = index + 1;
         L:
-        for (int i = startIndex; i < text.length(); i++) {
-            char c = text.charAt(i);
+        for (; i < end; i++) {
+            char c = text[i];
             if (c < ASCII_TABLE_LENGTH) {
                 switch (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_PATH_ENDING_SYMBOL | CHAR_PATH_SYMBOL | CHAR_LPAREN | CHAR_RPAREN)) {
                     case 0:
                         break L;
                     case CHAR_LPAREN:
-                        int lengthInParen = eatPathInParen(text, i + 1);
-                        if (lengthInParen == 0) break L;
-                        i += lengthInParen;
+                        parens.open(i);
                         break;
                     case CHAR_RPAREN:
-                        return i - startIndex + 1;
+                        if (parens.close(i)) {
+                            parens.endRegion(i + 1);
+                            return;
+                        }
+                        break;
                 }
-            } else if (!isCyrillicScript(c) && !isAccentChar(c)) {
+            } else if (!isUnicodePathCharAt(text, i, index, end)) {
                 break L;
             }
         }
 
-        return 0;
+        parens.endRegion(i);
     }
 
-    private static int eatQuery(String text, int startIndex) {
+    private static int eatQuery(char[] text, int startIndex, int end) {
         int lastEndingCharIndex = -1;
 
         L:
-        for (int i = startIndex; i < text.length(); i++) {
-            char c = text.charAt(i);
+        for (int i = startIndex; i < end; i++) {
+            char c = text[i];
             if (c >= ASCII_TABLE_LENGTH) break;
             switch (ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER | CHAR_QUERY_ENDING_SYMBOL | CHAR_QUERY_SYMBOL)) {
                 case 0:
@@ -349,54 +384,329 @@ public class Extractor {
         return lastEndingCharIndex == -1 ? 0 : lastEndingCharIndex - startIndex + 1;
     }
 
-    private void extract(String text, List<EntityInfo> result) {
-        IntList dots = new IntList();
-        IntList hashCodes = new IntList();
-        int startIndex = 0;
+    private static int codePointAt(char[] text, int index, int end) {
+        char c = text[index];
+        if (Character.isHighSurrogate(c) && index + 1 < end) {
+            char low = text[index + 1];
+            if (Character.isLowSurrogate(low)) return Character.toCodePoint(c, low);
+        }
+        return c;
+    }
+
+    private static int codePointBefore(char[] text, int index, int begin) {
+        char c = text[index - 1];
+        if (Character.isLowSurrogate(c) && index - 2 >= begin) {
+            char high = text[index - 2];
+            if (Character.isHighSurrogate(high)) return Character.toCodePoint(high, c);
+        }
+        return c;
+    }
+
+    private static boolean isHashtagLetter(int cp) {
+        switch (Character.getType(cp)) {
+            case Character.UPPERCASE_LETTER:
+            case Character.LOWERCASE_LETTER:
+            case Character.TITLECASE_LETTER:
+            case Character.MODIFIER_LETTER:
+            case Character.OTHER_LETTER:
+            case Character.NON_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // 文字以外でハッシュタグに使えるもの
+    private static boolean isHashtagNumeral(int cp) {
+        switch (cp) {
+            case '_':
+            case '\u200c':
+            case '\u200d':
+            case '\ua67e':
+            case '\u05be':
+            case '\u05f3':
+            case '\u05f4':
+            case '\uff5e':
+            case '\u301c':
+            case '\u309b':
+            case '\u309c':
+            case '\u30a0':
+            case '\u30fb':
+            case '\u3003':
+            case '\u0f0b':
+            case '\u0f0c':
+            case '\u00b7':
+                return true;
+            default:
+                return Character.getType(cp) == Character.DECIMAL_DIGIT_NUMBER;
+        }
+    }
+
+    private static boolean isMentionChar(char c) {
+        return c < ASCII_TABLE_LENGTH && ((ASCII_TABLE[c] & (CHAR_ALPHABET | CHAR_NUMBER)) != 0 || c == '_');
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return c < ASCII_TABLE_LENGTH && (ASCII_TABLE[c] & CHAR_ALPHABET) != 0;
+    }
+
+    private static boolean isAsciiWhitespace(char c) {
+        return c == ' ' || (c >= '\t' && c <= '\r');
+    }
+
+    // キャッシュタグの前に置ける空白
+    private static boolean isCashtagPrecedingChar(char c) {
+        return (c >= '\t' && c <= '\r') || c == ' ' || c == '\u0085' || c == '\u00a0' || c == '\u1680' || c == '\u180e'
+                || (c >= '\u2000' && c <= '\u200a') || c == '\u2028' || c == '\u2029' || c == '\u202f' || c == '\u205f' || c == '\u3000';
+    }
+
+    private static boolean isSchemeSeparatorAt(char[] text, int index, int end) {
+        return index + 2 < end && text[index] == ':' && text[index + 1] == '/' && text[index + 2] == '/';
+    }
+
+    // 以下の add〜 は text[index] から始まるエンティティを result に追加して、その終わりの位置を返す。見つからなければ -1
+
+    private static int addHashtag(char[] text, int begin, int index, int end, EntityBuffer result) {
+        if (index > begin) {
+            int cp = codePointBefore(text, index, begin);
+            if (cp == '&' || isHashtagLetter(cp) || isHashtagNumeral(cp)) return -1;
+        }
+
+        int i = index + 1;
+        if (i >= end || text[i] == '\uFE0F' || text[i] == '\u20E3') return -1;
+
+        // 数字だけのものは無効
+        boolean hasLetter = false;
+        while (i < end) {
+            int cp = codePointAt(text, i, end);
+            if (isHashtagLetter(cp)) hasLetter = true;
+            else if (!isHashtagNumeral(cp)) break;
+            i += Character.charCount(cp);
+        }
+        if (!hasLetter) return -1;
+
+        if (i < end && (text[i] == '#' || text[i] == '＃' || isSchemeSeparatorAt(text, i, end)))
+            return -1;
+
+        result.add(index - begin, i - index, EntityInfo.HASHTAG);
+        return i;
+    }
+
+    // 照合したが後ろの文字のせいで採用しなかった場合は、読み進めた位置 i を ~i として返す
+    private static int addMention(char[] text, int begin, int index, int end, int consumedEnd, EntityBuffer result) {
+        if (!canStartMention(text, begin, index, consumedEnd)) return -1;
+
+        // @ が連続していたら最後のものから
+        int i = index + 1;
+        while (i < end && (text[i] == '@' || text[i] == '＠')) i++;
+        int startIndex = i - 1;
+
+        int screenNameEnd = Math.min(end, i + 20);
+        for (; i < screenNameEnd; i++) {
+            if (!isMentionChar(text[i])) break;
+        }
+        if (i == startIndex + 1) return -1;
+
+        // リスト
+        if (i + 1 < end && text[i] == '/' && isAsciiLetter(text[i + 1])) {
+            int listEnd = Math.min(end, i + 2 + 24);
+            for (i += 2; i < listEnd; i++) {
+                char c = text[i];
+                if (!isMentionChar(c) && c != '-') break;
+            }
+        }
+
+        if (i < end) {
+            char c = text[i];
+            if (c == '@' || c == '＠' || (unicodeFlagsAt(text, i, begin, end) & UnicodeTable.ACCENT) != 0 || isSchemeSeparatorAt(text, i, end))
+                return ~i;
+        }
+
+        result.add(startIndex - begin, i - startIndex, EntityInfo.MENTION);
+        return i;
+    }
+
+    // consumedEnd より前の文字は前回の照合で読み進めているので、先行文字として使えない
+    private static boolean canStartMention(char[] text, int begin, int index, int consumedEnd) {
+        if (index == begin) return true;
+        if (index - 1 < consumedEnd) return false;
+
+        char c = text[index - 1];
+        if (!(isMentionChar(c) || c == '!' || c == '#' || c == '$' || c == '%' || c == '&' || c == '*' || c == '@' || c == '＠'))
+            return true;
+
+        // RT@ は例外
+        if (index - 2 < consumedEnd || toLower(c) != 't' || toLower(text[index - 2]) != 'r')
+            return false;
+        return index - 3 < begin || (index - 3 >= consumedEnd && !isRtPrecedingBlocker(text[index - 3]));
+    }
+
+    private static boolean isRtPrecedingBlocker(char c) {
+        return isMentionChar(c) || c == '+' || c == '~' || c == '.' || c == '-';
+    }
+
+    private static int addCashtag(char[] text, int begin, int index, int end, EntityBuffer result) {
+        if (index > begin && !isCashtagPrecedingChar(text[index - 1])) return -1;
+
+        int i = index + 1;
+        int symbolEnd = Math.min(end, i + 7);
+        for (; i < symbolEnd; i++) {
+            if (!isAsciiLetter(text[i])) break;
+        }
+        int len = i - index - 1;
+        if (len < 1 || len > 6) return -1;
+
+        // $ABC.D のような後ろの部分
+        if (i + 1 < end && (text[i] == '.' || text[i] == '_')) {
+            int j = i + 1;
+            int suffixEnd = Math.min(end, j + 3);
+            for (; j < suffixEnd; j++) {
+                if (!isAsciiLetter(text[j])) break;
+            }
+            int suffixLength = j - i - 1;
+            if (suffixLength >= 1 && suffixLength <= 2 && isCashtagEnd(text, j, end)) {
+                result.add(index - begin, j - index, EntityInfo.CASHTAG);
+                return j;
+            }
+        }
+
+        if (!isCashtagEnd(text, i, end)) return -1;
+
+        result.add(index - begin, i - index, EntityInfo.CASHTAG);
+        return i;
+    }
+
+    private static boolean isCashtagEnd(char[] text, int index, int end) {
+        if (index >= end) return true;
+        char c = text[index];
+        return isAsciiWhitespace(c) || (c > ' ' && c < ASCII_TABLE_LENGTH - 1 && !isAlnum(c));
+    }
+
+    private void scan(char[] text, int begin, int end, EntityBuffer result) {
+        this.scan(text, begin, begin, end, result, false, Integer.MAX_VALUE);
+    }
+
+    // allEntities なら URL に加えてハッシュタグ、メンション、キャッシュタグも 1 回の走査で抽出する。
+    // result が maxEntities 個になったら止めて、続きを走査するときの startIndex を返す。最後まで走査したら end を返す。
+    private int scan(char[] text, int begin, int startIndex, int end, EntityBuffer result, boolean allEntities, int maxEntities) {
+        ExtractorMetrics metrics = this.metrics;
+        if (metrics == null)
+            return this.scan(text, begin, startIndex, end, result, allEntities, maxEntities, null);
+
+        ExtractorMetrics.Recorder recorder = metrics.recorder();
+        int entityCount = result.size();
+        long startTime = recorder.recordsTimes ? System.nanoTime() : 0;
+        int resumeIndex = this.scan(text, begin, startIndex, end, result, allEntities, maxEntities, recorder);
+        if (recorder.recordsTimes)
+            recorder.recordTime(ExtractorMetrics.PHASE_SCAN, System.nanoTime() - startTime);
+
+        long[] counts = recorder.counts;
+        counts[ExtractorMetrics.SCANS]++;
+        counts[ExtractorMetrics.CHARS_SCANNED] += resumeIndex - startIndex;
+        counts[ExtractorMetrics.ENTITIES] += result.size() - entityCount;
+        return resumeIndex;
+    }
+
+    // recorder が null でなければ、候補の . の数や TLD の探索回数を記録する
+    private int scan(char[] text, int begin, int startIndex, int end, EntityBuffer result, boolean allEntities, int maxEntities,
+                     ExtractorMetrics.Recorder recorder) {
+        TldTable tldTable = this.tldTable;
+        int shortestTldLength = tldTable.getShortestLength();
+        int longestTldLength = tldTable.getLongestLength();
+        IntList dots = result.dots;
+        ParenMatcher parens = result.parens;
+        parens.initialize();
+        boolean recordUrlDetails = result.hasUrlDetails();
+        boolean recordCodePointIndexes = result.hasCodePointIndexes();
 
         Start:
         while (true) {
-            if (startIndex >= text.length() - 2) return;
+            if (startIndex != begin) {
+                // 続く . は、直前の . や URL の終わりとの間に前に置ける文字がないので、すべて候補にならない
+                int skippedEnd = skipDotsWithoutPrecedingChar(text, startIndex, end);
+                if (recorder != null && skippedEnd != startIndex) {
+                    int skippedDotCount = countDotCandidates(text, startIndex, skippedEnd, end);
+                    recorder.counts[ExtractorMetrics.DOT_CANDIDATES] += skippedDotCount;
+                    recorder.counts[ExtractorMetrics.DOTS_REJECTED_BEFORE_HOST] += skippedDotCount;
+                }
+                startIndex = skippedEnd;
+            }
 
-            int dotIndex = text.indexOf('.', startIndex);
+            int dotIndex;
+            if (allEntities) {
+                // . より前にある # @ $ を先に処理する
+                int i = startIndex;
+                int mentionConsumedEnd = begin;
+                for (; i < end; i++) {
+                    char c = text[i];
+                    if (c < ASCII_TABLE_LENGTH ? (ASCII_TABLE[c] & CHAR_ENTITY_START) == 0 : (c != '＃' && c != '＠'))
+                        continue;
+                    if (c == '.') break;
+
+                    int entityEnd = c == '$'
+                            ? addCashtag(text, begin, i, end, result)
+                            : c == '#' || c == '＃'
+                            ? addHashtag(text, begin, i, end, result)
+                            : addMention(text, begin, i, end, mentionConsumedEnd, result);
+                    if (entityEnd < -1) {
+                        mentionConsumedEnd = ~entityEnd;
+                    } else if (entityEnd != -1) {
+                        if (recordCodePointIndexes) result.setCodePointIndexes(text, begin);
+                        if (result.size() >= maxEntities) return entityEnd;
+                        startIndex = entityEnd;
+                        i = entityEnd - 1;
+                    }
+                }
+
+                if (i == end || startIndex >= end - 2) return end;
+                dotIndex = i;
+            } else {
+                if (startIndex >= end - 2) return end;
+                dotIndex = indexOf(text, '.', startIndex, end);
+            }
+
+            boolean hostFound = false;
 
             GoToNextToDot:
             {
-                if (dotIndex == -1 || dotIndex == text.length() - 1) return;
+                if (dotIndex == -1 || dotIndex == end - 1) return end;
+                if (recorder != null) recorder.counts[ExtractorMetrics.DOT_CANDIDATES]++;
                 if (dotIndex == startIndex) {
                     break GoToNextToDot;
                 }
 
-                char x = text.charAt(dotIndex - 1);
+                char x = text[dotIndex - 1];
                 if (x == '-' || x == '_')
                     break GoToNextToDot;
 
-                int precedingIndex = -1;
+                int precedingIndex = begin - 1;
                 int lastUnicodeCharIndex = -1;
                 boolean hasScheme = false;
                 SchemeCheck:
                 {
                     for (int i = dotIndex - 1; i >= startIndex; i--) {
-                        char c = text.charAt(i);
+                        char c = text[i];
 
                         if (c == '/') {
                             // ホストの最初が - や _ なら終了
-                            x = text.charAt(i + 1);
+                            x = text[i + 1];
                             if (x == '-' || x == '_')
                                 break GoToNextToDot;
 
                             // スキーム判定
-                            if (i >= 6) {
+                            if (i - begin >= 6) {
                                 int j = i - 1;
-                                if (text.charAt(j--) == '/' && text.charAt(j--) == ':') {
-                                    switch (toLower(text.charAt(j--))) {
+                                if (text[j--] == '/' && text[j--] == ':') {
+                                    switch (toLower(text[j--])) {
                                         case 's':
-                                            if (!(i >= 7 && toLower(text.charAt(j--)) == 'p'))
+                                            if (!(i - begin >= 7 && toLower(text[j--]) == 'p'))
                                                 break;
                                             // fallthrough
                                         case 'p':
-                                            if (toLower(text.charAt(j--)) == 't' && toLower(text.charAt(j--)) == 't' && toLower(text.charAt(j--)) == 'h') {
-                                                if (j < 0 || isPrecedingChar(text.charAt(j))) {
+                                            if (toLower(text[j--]) == 't' && toLower(text[j--]) == 't' && toLower(text[j--]) == 'h') {
+                                                if (j < begin || isPrecedingCharAt(text, j, begin, end)) {
                                                     precedingIndex = j;
                                                     hasScheme = true;
                                                     break SchemeCheck;
@@ -410,22 +720,33 @@ public class Extractor {
                             break GoToNextToDot;
                         }
 
-                        if (!isValidDomainChar(c)) {
-                            if (isPrecedingChar(c)) {
-                                precedingIndex = i;
-                                break;
+                        if (c < ASCII_TABLE_LENGTH) {
+                            if (!isAsciiDomainChar(c)) {
+                                if (isAsciiPrecedingChar(c)) {
+                                    precedingIndex = i;
+                                    break;
+                                }
+
+                                // PrecedingChar でないなら無効
+                                break GoToNextToDot;
+                            }
+                        } else {
+                            int flags = unicodeFlagsAt(text, i, begin, end);
+                            if ((flags & UnicodeTable.DOMAIN) == 0) {
+                                if ((flags & UnicodeTable.PRECEDING) != 0) {
+                                    precedingIndex = i;
+                                    break;
+                                }
+                                break GoToNextToDot;
                             }
 
-                            // PrecedingChar でないなら無効
-                            break GoToNextToDot;
+                            if (lastUnicodeCharIndex == -1 && (flags & UnicodeTable.UNICODE_DOMAIN) != 0)
+                                lastUnicodeCharIndex = i;
                         }
-
-                        if (lastUnicodeCharIndex == -1 && isUnicodeDomainChar(c))
-                            lastUnicodeCharIndex = i;
                     }
 
                     if (!hasScheme && lastUnicodeCharIndex != -1) {
-                        if (lastUnicodeCharIndex != dotIndex - 1 && isPrecedingChar(text.charAt(lastUnicodeCharIndex))) {
+                        if (lastUnicodeCharIndex != dotIndex - 1 && isPrecedingCharAt(text, lastUnicodeCharIndex, begin, end)) {
                             // Unicode文字を含まないようにして救済
                             precedingIndex = lastUnicodeCharIndex;
                             lastUnicodeCharIndex = -1;
@@ -434,34 +755,35 @@ public class Extractor {
                         }
                     }
 
-                    x = text.charAt(precedingIndex + 1);
-                    if ((precedingIndex == -1 && startIndex != 0) || x == '-' || x == '_')
+                    x = text[precedingIndex + 1];
+                    if ((precedingIndex == begin - 1 && startIndex != begin) || x == '-' || x == '_')
                         break GoToNextToDot;
                 }
 
                 // ホスト部分を最後まで読み取る
+                hostFound = true;
                 dots.initialize();
                 dots.add(dotIndex + 1);
                 boolean hasUnicodeCharAfterDot = false;
-                int nextIndex = text.length();
-                for (int i = dotIndex + 1; i < text.length(); i++) {
-                    char c = text.charAt(i);
+                int nextIndex = end;
+                for (int i = dotIndex + 1; i < end; i++) {
+                    char c = text[i];
 
                     if (c == '.') {
                         // . が text の最後なら終了
                         // スキームなしなのに Unicode 文字が含まれていたら終了
-                        if (i == text.length() - 1 || (!hasScheme && hasUnicodeCharAfterDot)) {
+                        if (i == end - 1 || (!hasScheme && hasUnicodeCharAfterDot)) {
                             nextIndex = i;
                             break;
                         }
 
                         // . の前後の文字が - や _ なら終了
-                        x = text.charAt(i - 1);
+                        x = text[i - 1];
                         if (x == '-' || x == '_') {
                             nextIndex = i - 1;
                             break;
                         }
-                        x = text.charAt(i + 1);
+                        x = text[i + 1];
                         if (x == '-' || x == '_') {
                             nextIndex = i;
                             break;
@@ -471,13 +793,21 @@ public class Extractor {
                         continue;
                     }
 
-                    if (!isValidDomainChar(c)) {
-                        nextIndex = i;
-                        break;
-                    }
+                    if (c < ASCII_TABLE_LENGTH) {
+                        if (!isAsciiDomainChar(c)) {
+                            nextIndex = i;
+                            break;
+                        }
+                    } else {
+                        int flags = unicodeFlagsAt(text, i, begin, end);
+                        if ((flags & UnicodeTable.DOMAIN) == 0) {
+                            nextIndex = i;
+                            break;
+                        }
 
-                    if (!hasUnicodeCharAfterDot)
-                        hasUnicodeCharAfterDot = isUnicodeDomainChar(c);
+                        if ((flags & UnicodeTable.UNICODE_DOMAIN) != 0)
+                            hasUnicodeCharAfterDot = true;
+                    }
                 }
 
                 // TLD 検証
@@ -488,33 +818,46 @@ public class Extractor {
                     for (int i = dots.size() - 1; i >= 0; i--) {
                         int dotIndexPlusOne = dots.get(i);
                         int len = nextIndex - dotIndexPlusOne;
-                        if (len < this.shortestTldLength) continue;
-                        if (len > this.longestTldLength) len = this.longestTldLength;
-                        nextIndex = dotIndexPlusOne + len;
+                        if (len < shortestTldLength) continue;
+                        if (len > longestTldLength) len = longestTldLength;
+                        int limit = dotIndexPlusOne + len;
 
-                        hashCodes.initialize();
+                        // 後ろに英数字が続かない位置で区切って TLD を探し、最も長いものを採用
+                        tldInfo = TldTable.NOT_FOUND;
                         int hash1 = 5381;
                         int hash2 = hash1;
 
-                        for (int j = dotIndexPlusOne; j < nextIndex; ) {
-                            hash1 = ((hash1 << 5) + hash1) ^ toLower(text.charAt(j++));
-                            hashCodes.add(hash1 + hash2 * 1566083941);
-                            if (j >= nextIndex) break;
-                            hash2 = ((hash2 << 5) + hash2) ^ toLower(text.charAt(j++));
-                            hashCodes.add(hash1 + hash2 * 1566083941);
-                        }
+                        for (int j = dotIndexPlusOne; j < limit; ) {
+                            hash1 = ((hash1 << 5) + hash1) ^ toLower(text[j++]);
+                            if (j - dotIndexPlusOne >= shortestTldLength && (j == end || !isAlnumAt(text[j]))) {
+                                int info = tldTable.get(text, dotIndexPlusOne, j - dotIndexPlusOne, hash1, hash2);
+                                if (recorder != null) recordTldLookup(recorder, info);
+                                if (info != TldTable.NOT_FOUND) {
+                                    tldInfo = info;
+                                    nextIndex = j;
+                                }
+                            }
+
+                            if (j >= limit) break;
 
-                        for (int j = hashCodes.size() - 1; j >= 0; j--) {
-                            nextIndex = dotIndexPlusOne + j + 1;
-                            if (nextIndex == text.length() || !isAlnumAt(text.charAt(nextIndex))) {
-                                tldInfo = this.tldMap.get(hashCodes.get(j));
-                                if (tldInfo != IntIntMap4a.NO_VALUE
-                                        && nextIndex - dotIndexPlusOne == (tldInfo & 0x3fffffff)) {
-                                    dotCount = i + 1;
-                                    break TldDecided;
+                            hash2 = ((hash2 << 5) + hash2) ^ toLower(text[j++]);
+                            if (j - dotIndexPlusOne >= shortestTldLength && (j == end || !isAlnumAt(text[j]))) {
+                                int info = tldTable.get(text, dotIndexPlusOne, j - dotIndexPlusOne, hash1, hash2);
+                                if (recorder != null) recordTldLookup(recorder, info);
+                                if (info != TldTable.NOT_FOUND) {
+                                    tldInfo = info;
+                                    nextIndex = j;
                                 }
                             }
                         }
+
+                        if (tldInfo != TldTable.NOT_FOUND) {
+                            dotCount = i + 1;
+                            break TldDecided;
+                        }
+
+                        // ひとつ前のラベルは、このラベルの 1 文字目までを候補にする
+                        nextIndex = dotIndexPlusOne + 1;
                     }
 
                     break GoToNextToDot;
@@ -523,30 +866,41 @@ public class Extractor {
                 GoToNextIndex:
                 {
                     // ccTLD のサブドメインなしはスキーム必須
-                    if (!hasScheme && (tldInfo & 0b11 << 30) == CCTLD
-                            && (dotCount == 1 && (nextIndex >= text.length() || text.charAt(nextIndex) != '/')))
+                    if (!hasScheme && tldInfo == TldTable.CCTLD
+                            && (dotCount == 1 && (nextIndex >= end || text[nextIndex] != '/'))) {
+                        if (recorder != null) recorder.counts[ExtractorMetrics.URLS_REJECTED_BY_RULES]++;
                         break GoToNextIndex;
+                    }
 
                     // サブドメインには _ を使えるがドメインには使えない
                     for (int i = dots.last() - 2; i > precedingIndex; i--) {
-                        char c = text.charAt(i);
+                        char c = text[i];
                         if (c == '.' || c == '/') break;
-                        if (c == '_')
+                        if (c == '_') {
+                            if (recorder != null) recorder.counts[ExtractorMetrics.URLS_REJECTED_BY_RULES]++;
                             break GoToNextIndex;
+                        }
                     }
 
                     int urlStartIndex = precedingIndex + 1;
+                    int hostEndIndex = nextIndex;
+                    int portStartIndex = -1;
+                    int pathStartIndex = -1;
+                    int pathEndIndex = -1;
+                    int queryStartIndex = -1;
+                    long tcoId = TcoCache.NO_ID;
+                    long pathStartTime = recorder != null && recorder.recordsTimes ? System.nanoTime() : 0;
 
                     AddAndGoNext:
                     {
-                        if (nextIndex >= text.length())
+                        if (nextIndex >= end)
                             break AddAndGoNext;
 
                         // ポート番号
-                        if (text.charAt(nextIndex) == ':' && ++nextIndex < text.length()) {
+                        if (text[nextIndex] == ':' && (portStartIndex = ++nextIndex) < end) {
                             int portNumberLength = 0;
-                            for (; nextIndex < text.length(); nextIndex++) {
-                                char c = text.charAt(nextIndex);
+                            for (; nextIndex < end; nextIndex++) {
+                                char c = text[nextIndex];
                                 if (c <= '9' && c >= '0')
                                     portNumberLength++;
                                 else
@@ -554,71 +908,639 @@ public class Extractor {
                             }
 
                             if (portNumberLength == 0) {
-                                result.add(new EntityInfo(urlStartIndex, (--nextIndex) - urlStartIndex));
-                                break GoToNextIndex;
+                                portStartIndex = -1;
+                                --nextIndex;
+                                break AddAndGoNext;
                             }
                         }
 
-                        if (nextIndex >= text.length())
+                        if (nextIndex >= end)
                             break AddAndGoNext;
 
                         // パス
-                        if (text.charAt(nextIndex) == '/') {
-                            nextIndex++;
+                        if (text[nextIndex] == '/') {
+                            pathStartIndex = nextIndex;
 
                             // https?://t.co/xxxxxxxxxx だけ特別扱い
                             int len = nextIndex - urlStartIndex;
                             nextIndex++;
                             if (hasScheme && (len == 11 || len == 12)
-                                    && toLower(text.charAt(nextIndex - 2)) == 'o' && toLower(text.charAt(nextIndex - 3)) == 'c'
-                                    && text.charAt(nextIndex - 4) == '.' && toLower(text.charAt(nextIndex - 5)) == 't' && text.charAt(nextIndex - 6) == '/'
-                                    && nextIndex < text.length() && isAlnum(text.charAt(nextIndex))) {
+                                    && toLower(text[nextIndex - 2]) == 'o' && toLower(text[nextIndex - 3]) == 'c'
+                                    && text[nextIndex - 4] == '.' && toLower(text[nextIndex - 5]) == 't' && text[nextIndex - 6] == '/'
+                                    && nextIndex < end && isAlnum(text[nextIndex])) {
                                 nextIndex++;
-                                for (; nextIndex < text.length(); nextIndex++) {
-                                    if (!isAlnum(text.charAt(nextIndex)))
+                                for (; nextIndex < end; nextIndex++) {
+                                    if (!isAlnum(text[nextIndex]))
                                         break;
                                 }
+                                pathEndIndex = nextIndex;
+                                tcoId = TcoCache.toId(text, pathStartIndex + 1, nextIndex);
                                 break AddAndGoNext;
                             }
 
-                            nextIndex += eatPath(text, nextIndex);
+                            nextIndex += eatPath(text, nextIndex, end, parens);
+                            pathEndIndex = nextIndex;
                         }
 
-                        if (nextIndex >= text.length())
+                        if (nextIndex >= end)
                             break AddAndGoNext;
 
                         // クエリ
-                        if (text.charAt(nextIndex) == '?') {
+                        if (text[nextIndex] == '?') {
                             nextIndex++;
-                            nextIndex += eatQuery(text, nextIndex);
+                            queryStartIndex = nextIndex;
+                            nextIndex += eatQuery(text, nextIndex, end);
                         }
                     }
 
-                    result.add(new EntityInfo(urlStartIndex, nextIndex - urlStartIndex));
+                    if (pathStartTime != 0)
+                        recorder.recordTime(ExtractorMetrics.PHASE_PATH, System.nanoTime() - pathStartTime);
+
+                    result.add(urlStartIndex - begin, nextIndex - urlStartIndex);
+                    if (tcoId != TcoCache.NO_ID)
+                        result.setTcoId(tcoId);
+                    if (recordCodePointIndexes)
+                        result.setCodePointIndexes(text, begin);
+
+                    if (recordUrlDetails) {
+                        int schemeLength = hasScheme ? (toLower(text[urlStartIndex + 4]) == 's' ? 5 : 4) : 0;
+                        int hostStartIndex = hasScheme ? urlStartIndex + schemeLength + 3 : urlStartIndex;
+                        int tldStartIndex = dots.get(dotCount - 1);
+                        int portEndIndex = pathStartIndex != -1 ? pathStartIndex : queryStartIndex != -1 ? queryStartIndex - 1 : nextIndex;
+                        result.setUrlDetails(schemeLength, hostStartIndex - begin, hostEndIndex - hostStartIndex,
+                                tldStartIndex - begin, tldInfo,
+                                portStartIndex == -1 ? -1 : portStartIndex - begin, portStartIndex == -1 ? 0 : portEndIndex - portStartIndex,
+                                pathStartIndex == -1 ? -1 : pathStartIndex - begin, pathStartIndex == -1 ? 0 : pathEndIndex - pathStartIndex,
+                                queryStartIndex == -1 ? -1 : queryStartIndex - begin, queryStartIndex == -1 ? 0 : nextIndex - queryStartIndex);
+                    }
                 }
 
                 startIndex = nextIndex;
+                if (result.size() >= maxEntities) return startIndex;
                 continue Start;
 
             }
+            if (recorder != null)
+                recorder.counts[hostFound ? ExtractorMetrics.DOTS_REJECTED_NO_TLD : ExtractorMetrics.DOTS_REJECTED_BEFORE_HOST]++;
             startIndex = dotIndex + 1;
             continue Start;
         }
     }
 
+    // startIndex から ASCII の英数字、 - 、 _ 、 . だけが続く間にある最後の . の次の位置。 . がなければ startIndex
+    private static int skipDotsWithoutPrecedingChar(char[] text, int startIndex, int end) {
+        int result = startIndex;
+        for (int i = startIndex; i < end; i++) {
+            char c = text[i];
+            if (c == '.') result = i + 1;
+            else if (c >= ASCII_TABLE_LENGTH || !isAsciiDomainChar(c)) break;
+        }
+        return result;
+    }
+
+    // [startIndex, skippedEnd) の . のうち、飛ばさなければ候補として調べたものの数
+    private static int countDotCandidates(char[] text, int startIndex, int skippedEnd, int end) {
+        int count = 0;
+        for (int i = startIndex; i < skippedEnd; i++) {
+            if (text[i] == '.') {
+                if (startIndex >= end - 2 || i == end - 1) break;
+                count++;
+                startIndex = i + 1;
+            }
+        }
+        return count;
+    }
+
+    private static void recordTldLookup(ExtractorMetrics.Recorder recorder, int info) {
+        recorder.counts[ExtractorMetrics.TLD_LOOKUPS]++;
+        if (info != TldTable.NOT_FOUND) recorder.counts[ExtractorMetrics.TLD_HITS]++;
+    }
+
     public List<EntityInfo> extract(String text) {
-        List<EntityInfo> result = new ArrayList<>();
-        if (text != null && text.length() > 0)
-            this.extract(text, result);
+        EntityBuffer buffer = localBuffer.get();
+        this.extract(text, buffer);
+        buffer.releaseScratch();
+        return buffer.toList();
+    }
+
+    public int extract(String text, EntityBuffer buffer) {
+        buffer.clear();
+        if (text != null && text.length() > 0) {
+            int len = text.length();
+            char[] chars = buffer.chars(len);
+            text.getChars(0, len, chars, 0);
+            this.scan(chars, 0, len, buffer);
+        }
+        return buffer.size();
+    }
+
+    // 結果の位置は off からの相対位置
+    public int extract(char[] buf, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > buf.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", buf.length: " + buf.length);
+
+        buffer.clear();
+        if (len > 0)
+            this.scan(buf, off, off + len, buffer);
+        return buffer.size();
+    }
+
+    // URL のスキーム、ホスト、 TLD 、ポート、パス、クエリの位置も記録する。 EntityBuffer#getHostStartIndex などで取得する
+    public int extractWithDetails(String text, EntityBuffer buffer) {
+        buffer.clear();
+        buffer.recordUrlDetails();
+        if (text != null && text.length() > 0) {
+            int len = text.length();
+            char[] chars = buffer.chars(len);
+            text.getChars(0, len, chars, 0);
+            this.scan(chars, 0, len, buffer);
+        }
+        return buffer.size();
+    }
+
+    public int extractWithDetails(char[] buf, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > buf.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", buf.length: " + buf.length);
+
+        buffer.clear();
+        buffer.recordUrlDetails();
+        if (len > 0)
+            this.scan(buf, off, off + len, buffer);
+        return buffer.size();
+    }
+
+    // UTF-16 の位置に加えて、 Twitter API と同じ code point での位置も走査しながら記録する。
+    // EntityBuffer#getCodePointStartIndex などで取得する
+    public int extractWithCodePointIndexes(String text, EntityBuffer buffer) {
+        buffer.clear();
+        buffer.recordCodePointIndexes();
+        if (text != null && text.length() > 0) {
+            int len = text.length();
+            char[] chars = buffer.chars(len);
+            text.getChars(0, len, chars, 0);
+            this.scan(chars, 0, len, buffer);
+        }
+        return buffer.size();
+    }
+
+    public int extractWithCodePointIndexes(char[] buf, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > buf.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", buf.length: " + buf.length);
+
+        buffer.clear();
+        buffer.recordCodePointIndexes();
+        if (len > 0)
+            this.scan(buf, off, off + len, buffer);
+        return buffer.size();
+    }
+
+    // URL のドメインを counter で数えて、 URL の数を返す
+    public int countDomains(String text, DomainCounter counter) {
+        EntityBuffer buffer = localBuffer.get();
+        int count = this.extractWithDetails(text, buffer);
+        if (count > 0)
+            addDomains(buffer.chars(text.length()), 0, buffer, counter);
+        buffer.releaseScratch();
+        return count;
+    }
+
+    public int countDomains(char[] buf, int off, int len, DomainCounter counter) {
+        EntityBuffer buffer = localBuffer.get();
+        int count = this.extractWithDetails(buf, off, len, buffer);
+        addDomains(buf, off, buffer, counter);
+        return count;
+    }
+
+    private static void addDomains(char[] text, int off, EntityBuffer buffer, DomainCounter counter) {
+        for (int i = 0, count = buffer.size(); i < count; i++) {
+            int hostStartIndex = off + buffer.getHostStartIndex(i);
+            counter.add(text, hostStartIndex, hostStartIndex + buffer.getHostLength(i),
+                    off + buffer.getTldStartIndex(i), buffer.getTldType(i));
+        }
+    }
+
+    // URL に加えてハッシュタグ、メンション、キャッシュタグも抽出する。種類は EntityInfo.getType で判別できる
+    public List<EntityInfo> extractEntities(String text) {
+        EntityBuffer buffer = localBuffer.get();
+        this.extractEntities(text, buffer);
+        buffer.releaseScratch();
+        return buffer.toList();
+    }
+
+    public int extractEntities(String text, EntityBuffer buffer) {
+        buffer.clear();
+        if (text != null && text.length() > 0) {
+            int len = text.length();
+            char[] chars = buffer.chars(len);
+            text.getChars(0, len, chars, 0);
+            this.scan(chars, 0, 0, len, buffer, true, Integer.MAX_VALUE);
+        }
+        return buffer.size();
+    }
+
+    public int extractEntities(char[] buf, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > buf.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", buf.length: " + buf.length);
+
+        buffer.clear();
+        if (len > 0)
+            this.scan(buf, off, off, off + len, buffer, true, Integer.MAX_VALUE);
+        return buffer.size();
+    }
+
+    public int extractEntitiesWithCodePointIndexes(String text, EntityBuffer buffer) {
+        buffer.clear();
+        buffer.recordCodePointIndexes();
+        if (text != null && text.length() > 0) {
+            int len = text.length();
+            char[] chars = buffer.chars(len);
+            text.getChars(0, len, chars, 0);
+            this.scan(chars, 0, 0, len, buffer, true, Integer.MAX_VALUE);
+        }
+        return buffer.size();
+    }
+
+    public int extractEntitiesWithCodePointIndexes(char[] buf, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > buf.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", buf.length: " + buf.length);
+
+        buffer.clear();
+        buffer.recordCodePointIndexes();
+        if (len > 0)
+            this.scan(buf, off, off, off + len, buffer, true, Integer.MAX_VALUE);
+        return buffer.size();
+    }
+
+    // 結果の位置は start からの相対位置
+    public int extract(CharSequence text, int start, int end, EntityBuffer buffer) {
+        if (start < 0 || start > end || end > text.length())
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + text.length());
+
+        buffer.clear();
+        this.scan(text, start, end, buffer, Integer.MAX_VALUE);
+        return buffer.size();
+    }
+
+    // 先頭から maxEntities 個まで抽出し、それ以降は走査しない
+    public List<EntityInfo> extract(String text, int maxEntities) {
+        EntityBuffer buffer = localBuffer.get();
+        this.extract(text, maxEntities, buffer);
+        buffer.releaseScratch();
+        return buffer.toList();
+    }
+
+    public int extract(String text, int maxEntities, EntityBuffer buffer) {
+        if (maxEntities < 0)
+            throw new IllegalArgumentException("maxEntities must not be negative");
+
+        buffer.clear();
+        if (text != null && maxEntities > 0)
+            this.scan(text, 0, text.length(), buffer, maxEntities);
+        return buffer.size();
+    }
+
+    // 最初の URL が見つかった時点で走査をやめる
+    public boolean containsUrl(CharSequence text) {
+        if (text == null) return false;
+
+        EntityBuffer buffer = localBuffer.get();
+        buffer.clear();
+        this.scan(text, 0, text.length(), buffer, 1);
+        buffer.releaseScratch();
+        return buffer.size() > 0;
+    }
+
+    // EntityInfo を作らずに数だけ返す
+    public int countUrls(CharSequence text) {
+        if (text == null) return 0;
+
+        EntityBuffer buffer = localBuffer.get();
+        buffer.clear();
+        this.scan(text, 0, text.length(), buffer, Integer.MAX_VALUE);
+        buffer.releaseScratch();
+        return buffer.size();
+    }
+
+    // 次の URL を要求されるまで走査を進めない。 text は最初にコピーするので、その後に変更しても結果は変わらない。
+    public Iterator<EntityInfo> iterateUrls(CharSequence text) {
+        EntityBuffer buffer = new EntityBuffer(1);
+        int len = text == null ? 0 : text.length();
+        char[] chars = buffer.chars(len);
+        if (len > 0) copyChars(text, 0, len, chars);
+        return new UrlIterator(this, chars, len, buffer);
+    }
+
+    private void scan(CharSequence text, int start, int end, EntityBuffer buffer, int maxEntities) {
+        int len = end - start;
+        if (len < 3) return;
+
+        if (text instanceof CharBuffer) {
+            CharBuffer cb = (CharBuffer) text;
+            if (cb.hasArray()) {
+                // コピーせずに配列をそのまま読む
+                int begin = cb.arrayOffset() + cb.position() + start;
+                this.scan(cb.array(), begin, begin, begin + len, buffer, false, maxEntities);
+                return;
+            }
+        }
+
+        // . がなければコピーする必要もない
+        if (text instanceof String && ((String) text).indexOf('.', start) == -1)
+            return;
+
+        char[] chars = buffer.chars(len);
+        copyChars(text, start, end, chars);
+        this.scan(chars, 0, 0, len, buffer, false, maxEntities);
+    }
+
+    private static void copyChars(CharSequence text, int start, int end, char[] dst) {
+        if (text instanceof String) {
+            ((String) text).getChars(start, end, dst, 0);
+        } else if (text instanceof StringBuilder) {
+            ((StringBuilder) text).getChars(start, end, dst, 0);
+        } else if (text instanceof StringBuffer) {
+            ((StringBuffer) text).getChars(start, end, dst, 0);
+        } else {
+            for (int i = start; i < end; i++)
+                dst[i - start] = text.charAt(i);
+        }
+    }
+
+    // UTF-8 のバイト列を抽出する。 EntityBuffer には off からの相対位置で UTF-16 とバイトの両方の位置が入る。
+    // バイト列のまま走査するのではなく、 . があれば作業領域の char[] にデコードし、 UTF-16 の位置からバイト位置への int[] も作る。
+    // String は作らないが、 1 文字あたり char[] に 2 バイト、 int[] に 4 バイトを書き込む。
+    public int extractUtf8(byte[] utf8, int off, int len, EntityBuffer buffer) {
+        if (off < 0 || len < 0 || off > utf8.length - len)
+            throw new IndexOutOfBoundsException("off: " + off + ", len: " + len + ", utf8.length: " + utf8.length);
+
+        buffer.clear();
+        int end = off + len;
+
+        // . がなければ URL はないので、デコードせずに終了
+        if (indexOf(utf8, (byte) '.', off, end) == -1) {
+            buffer.setByteIndexes(null);
+            return 0;
+        }
+
+        char[] chars = buffer.chars(len);
+        int[] byteIndexes = buffer.byteIndexes(len + 1);
+        ExtractorMetrics metrics = this.metrics;
+        long startTime = metrics != null && metrics.recordsTimes() ? System.nanoTime() : 0;
+        int charCount = Utf8Decoder.decode(utf8, off, end, chars, byteIndexes);
+        if (startTime != 0)
+            metrics.recorder().recordTime(ExtractorMetrics.PHASE_DECODE, System.nanoTime() - startTime);
+        this.scan(chars, 0, charCount, buffer);
+        buffer.setByteIndexes(byteIndexes);
+        return buffer.size();
+    }
+
+    // position から limit までを読み取る。 position は変更しない。
+    public int extractUtf8(ByteBuffer utf8, EntityBuffer buffer) {
+        int position = utf8.position();
+        int len = utf8.remaining();
+
+        if (utf8.hasArray())
+            return this.extractUtf8(utf8.array(), utf8.arrayOffset() + position, len, buffer);
+
+        // ダイレクトバッファは作業領域にまとめてコピーしてから読む
+        byte[] bytes = buffer.bytes(len);
+        utf8.duplicate().get(bytes, 0, len);
+        return this.extractUtf8(bytes, 0, len, buffer);
+    }
+
+    public BatchResult extractAll(List<? extends CharSequence> texts) {
+        int textCount = texts.size();
+        BatchResult result = new BatchResult(0, textCount, estimateBatchCapacity(textCount));
+        EntityBuffer buffer = localBuffer.get();
+        int textIndex = 0;
+        for (CharSequence text : texts)
+            this.extractTo(text, textIndex++, buffer, result);
+        buffer.releaseScratch();
         return result;
     }
 
+    // テキストを分割して pool で並列に処理する。作業領域はワーカースレッドごとに使い回す。
+    public BatchResult extractAll(List<? extends CharSequence> texts, ForkJoinPool pool) {
+        int textCount = texts.size();
+        int chunkCount = Math.min(textCount / MIN_BATCH_CHUNK_SIZE, pool.getParallelism() * 4);
+        if (chunkCount <= 1)
+            return this.extractAll(texts);
+
+        CharSequence[] array = texts.toArray(new CharSequence[textCount]);
+        return pool.invoke(new BatchTask(this, array, chunkCount));
+    }
+
+    private static int estimateBatchCapacity(int textCount) {
+        return Math.max(16, textCount / 2);
+    }
+
+    private void extractTo(CharSequence text, int textIndex, EntityBuffer buffer, BatchResult result) {
+        if (text == null) buffer.clear();
+        else this.extract(text, 0, text.length(), buffer);
+        result.add(textIndex, buffer);
+    }
+
+    private static class UrlIterator implements Iterator<EntityInfo> {
+        private final Extractor extractor;
+        private final char[] text;
+        private final int end;
+        private final EntityBuffer buffer;
+        private int startIndex;
+        private EntityInfo next;
+
+        UrlIterator(Extractor extractor, char[] text, int end, EntityBuffer buffer) {
+            this.extractor = extractor;
+            this.text = text;
+            this.end = end;
+            this.buffer = buffer;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (this.next != null) return true;
+            if (this.startIndex >= this.end) return false;
+
+            EntityBuffer buffer = this.buffer;
+            buffer.clear();
+            this.startIndex = this.extractor.scan(this.text, 0, this.startIndex, this.end, buffer, false, 1);
+            if (buffer.size() == 0) return false;
+
+            this.next = new EntityInfo(buffer.getStartIndex(0), buffer.getLength(0));
+            return true;
+        }
+
+        @Override
+        public EntityInfo next() {
+            if (!this.hasNext())
+                throw new NoSuchElementException();
+
+            EntityInfo result = this.next;
+            this.next = null;
+            return result;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static class BatchTask extends RecursiveTask<BatchResult> {
+        private final Extractor extractor;
+        private final CharSequence[] texts;
+        private final int chunkCount;
+
+        BatchTask(Extractor extractor, CharSequence[] texts, int chunkCount) {
+            this.extractor = extractor;
+            this.texts = texts;
+            this.chunkCount = chunkCount;
+        }
+
+        @Override
+        protected BatchResult compute() {
+            int textCount = this.texts.length;
+            List<ChunkTask> chunks = new ArrayList<>(this.chunkCount);
+            for (int i = 0; i < this.chunkCount; i++) {
+                int from = (int) ((long) textCount * i / this.chunkCount);
+                int to = (int) ((long) textCount * (i + 1) / this.chunkCount);
+                chunks.add(new ChunkTask(this.extractor, this.texts, from, to));
+            }
+
+            invokeAll(chunks);
+
+            int capacity = 0;
+            for (ChunkTask x : chunks)
+                capacity += x.getRawResult().size();
+
+            BatchResult result = new BatchResult(0, textCount, capacity);
+            for (ChunkTask x : chunks)
+                result.addAll(x.getRawResult());
+            return result;
+        }
+    }
+
+    private static class ChunkTask extends RecursiveTask<BatchResult> {
+        private final Extractor extractor;
+        private final CharSequence[] texts;
+        private final int from;
+        private final int to;
+
+        ChunkTask(Extractor extractor, CharSequence[] texts, int from, int to) {
+            this.extractor = extractor;
+            this.texts = texts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected BatchResult compute() {
+            BatchResult result = new BatchResult(this.from, this.to - this.from, estimateBatchCapacity(this.to - this.from));
+            EntityBuffer buffer = localBuffer.get();
+            for (int i = this.from; i < this.to; i++)
+                this.extractor.extractTo(this.texts[i], i, buffer, result);
+            buffer.releaseScratch();
+            return result;
+        }
+    }
+
     public int getTweetLength(String text, int tcoLength) {
-        text = Normalizer.normalize(text, Normalizer.Form.NFC);
+        EntityBuffer buffer = localBuffer.get();
+        int length = this.getTweetLength(text, tcoLength, buffer);
+        buffer.releaseScratch();
+        return length;
+    }
+
+    public int getTweetLength(String text, int tcoLength, EntityBuffer buffer) {
+        text = normalize(text);
         int length = text.codePointCount(0, text.length());
-        for (EntityInfo x : this.extract(text)) {
-            length += tcoLength - x.getLength();
+        int count = this.extract(text, buffer);
+        for (int i = 0; i < count; i++) {
+            length += tcoLength - buffer.getLength(i);
         }
         return length;
     }
+
+    // twitter-text v3 と同じ重み付きの長さ。 config.getMaxWeightedTweetLength() 以下なら投稿できる
+    public int getWeightedTweetLength(String text, TweetLengthConfig config) {
+        EntityBuffer buffer = localBuffer.get();
+        int length = this.getWeightedTweetLength(text, config, buffer);
+        buffer.releaseScratch();
+        return length;
+    }
+
+    public int getWeightedTweetLength(String text, TweetLengthConfig config, EntityBuffer buffer) {
+        if (config == null)
+            throw new IllegalArgumentException("config is null");
+
+        text = normalize(text);
+        int len = text.length();
+        buffer.clear();
+        char[] chars = buffer.chars(len);
+        text.getChars(0, len, chars, 0);
+
+        // URL を 1 つ見つけるたびに、その手前までの重みを数える。走査と重み付けで text を前から 1 回だけ読む
+        int urlWeight = config.getTransformedUrlLength() * config.getScale();
+        int weight = 0;
+        int weightedEnd = 0;
+        int startIndex = 0;
+        while (startIndex < len) {
+            int count = buffer.size();
+            startIndex = this.scan(chars, 0, startIndex, len, buffer, false, count + 1);
+            if (buffer.size() == count) break;
+
+            int urlStartIndex = buffer.getStartIndex(count);
+            weight += config.getWeight(chars, weightedEnd, urlStartIndex) + urlWeight;
+            weightedEnd = urlStartIndex + buffer.getLength(count);
+        }
+
+        // twitter-text と同じく、空白だけなら 0
+        if (buffer.size() == 0 && isBlank(chars, len)) return 0;
+
+        weight += config.getWeight(chars, weightedEnd, len);
+        return weight / config.getScale();
+    }
+
+    private static boolean isBlank(char[] text, int len) {
+        for (int i = 0; i < len; i++) {
+            if (text[i] > ' ') return false;
+        }
+        return true;
+    }
+
+    // NFC にする。 NFC で変化せず、前の文字と合成されることもない文字だけならそのまま返す
+    private static String normalize(String text) {
+        int len = text.length();
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (isNfcStable(c)) continue;
+
+            // 絵文字などのサロゲートペア
+            if (Character.isHighSurrogate(c) && i + 1 < len) {
+                char low = text.charAt(i + 1);
+                if (Character.isLowSurrogate(low) && isNfcStable(Character.toCodePoint(c, low))) {
+                    i++;
+                    continue;
+                }
+            }
+
+            return Normalizer.normalize(text, Normalizer.Form.NFC);
+        }
+        return text;
+    }
+
+    // 結合文字 (U+0300 以降) の手前までと、よく使われる CJK の範囲。濁点 (U+3099, U+309A) は含まない
+    private static boolean isNfcStable(char c) {
+        return c < '\u0300'
+                || (c >= '\u3000' && c <= '\u3098') || (c >= '\u309B' && c <= '\u30FF')
+                || (c >= '\u4E00' && c <= '\u9FFF') || (c >= '\uAC00' && c <= '\uD7A3')
+                || (c >= '\u2002' && c <= '\u206F') || (c >= '\uFF00' && c <= '\uFFEF');
+    }
+
+    // 補助文字のうち、結合文字と、 NFC で別の文字になる音楽記号 (U+1D15E から U+1D1C0) と CJK 互換漢字補助以外
+    private static boolean isNfcStable(int codePoint) {
+        if ((codePoint >= 0x1D15E && codePoint <= 0x1D1C0) || (codePoint >= 0x2F800 && codePoint <= 0x2FA1F))
+            return false;
+        int type = Character.getType(codePoint);
+        return type != Character.NON_SPACING_MARK && type != Character.COMBINING_SPACING_MARK;
+    }
 }
@@ -0,0 +1,183 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link Extractor#setMetrics(ExtractorMetrics)} で設定すると、抽出中の出来事を数える。
+ * 値はスレッドごとに記録し、読み取るときに合計する。記録中のスレッドがあるときの値は近似値になる。
+ * 終了したスレッドの記録は 1 つにまとめるので、スレッドが入れ替わり続けても記録は増え続けない。
+ * recordsTimes なら、処理段階ごとの所要時間の分布も記録する。
+ * 設定していなければ、 Extractor は null の判定をするだけで何も記録しない。
+ */
+public final class ExtractorMetrics {
+    // 走査した回数
+    public static final int SCANS = 0;
+    // 走査した文字数
+    public static final int CHARS_SCANNED = 1;
+    // URL の候補として調べた . の数
+    public static final int DOT_CANDIDATES = 2;
+    // スキームや . の前の文字が条件に合わず、ホストを読む前に捨てた候補
+    public static final int DOTS_REJECTED_BEFORE_HOST = 3;
+    // TLD が見つからずに捨てた候補
+    public static final int DOTS_REJECTED_NO_TLD = 4;
+    // TLD は見つかったが、スキームのない ccTLD などの規則で捨てた候補
+    public static final int URLS_REJECTED_BY_RULES = 5;
+    public static final int TLD_LOOKUPS = 6;
+    public static final int TLD_HITS = 7;
+    // 抽出したエンティティの数
+    public static final int ENTITIES = 8;
+    public static final int COUNTER_COUNT = 9;
+
+    // Extractor の scan 1 回
+    public static final int PHASE_SCAN = 0;
+    // URL のポート、パス、クエリの読み取り
+    public static final int PHASE_PATH = 1;
+    // extractUtf8 の UTF-8 のデコード
+    public static final int PHASE_DECODE = 2;
+    public static final int PHASE_COUNT = 3;
+
+    // i 番目は 2^i ナノ秒以上 2^(i+1) ナノ秒未満。 0 番目は 2 ナノ秒未満
+    public static final int HISTOGRAM_BUCKET_COUNT = 40;
+
+    private final boolean recordsTimes;
+    private final List<Recorder> recorders = new ArrayList<>();
+    // 終了したスレッドの記録の合計
+    private final Recorder retired;
+
+    private final ThreadLocal<Recorder> localRecorder = new ThreadLocal<Recorder>() {
+        @Override
+        protected Recorder initialValue() {
+            Recorder recorder = new Recorder(ExtractorMetrics.this.recordsTimes, Thread.currentThread());
+            synchronized (ExtractorMetrics.this.recorders) {
+                ExtractorMetrics.this.removeRetiredRecorders();
+                ExtractorMetrics.this.recorders.add(recorder);
+            }
+            return recorder;
+        }
+    };
+
+    public ExtractorMetrics() {
+        this(false);
+    }
+
+    public ExtractorMetrics(boolean recordsTimes) {
+        this.recordsTimes = recordsTimes;
+        this.retired = new Recorder(recordsTimes, null);
+    }
+
+    public boolean recordsTimes() {
+        return this.recordsTimes;
+    }
+
+    public long get(int counter) {
+        if (counter < 0 || counter >= COUNTER_COUNT)
+            throw new IllegalArgumentException("Invalid counter: " + counter);
+
+        synchronized (this.recorders) {
+            this.removeRetiredRecorders();
+            long result = this.retired.counts[counter];
+            for (Recorder x : this.recorders)
+                result += x.counts[counter];
+            return result;
+        }
+    }
+
+    public long getTldMisses() {
+        return this.get(TLD_LOOKUPS) - this.get(TLD_HITS);
+    }
+
+    // HISTOGRAM_BUCKET_COUNT 個の回数。 recordsTimes でなければすべて 0
+    public long[] getHistogram(int phase) {
+        if (phase < 0 || phase >= PHASE_COUNT)
+            throw new IllegalArgumentException("Invalid phase: " + phase);
+
+        long[] result = new long[HISTOGRAM_BUCKET_COUNT];
+        if (!this.recordsTimes) return result;
+
+        int offset = phase * HISTOGRAM_BUCKET_COUNT;
+        synchronized (this.recorders) {
+            this.removeRetiredRecorders();
+            for (int i = 0; i < HISTOGRAM_BUCKET_COUNT; i++)
+                result[i] = this.retired.histograms[offset + i];
+            for (Recorder x : this.recorders) {
+                for (int i = 0; i < HISTOGRAM_BUCKET_COUNT; i++)
+                    result[i] += x.histograms[offset + i];
+            }
+        }
+        return result;
+    }
+
+    // 記録中のスレッドがあると、その分は消えないことがある
+    public void reset() {
+        synchronized (this.recorders) {
+            this.retired.reset();
+            for (Recorder x : this.recorders)
+                x.reset();
+        }
+    }
+
+    Recorder recorder() {
+        return this.localRecorder.get();
+    }
+
+    // 記録しているスレッドの数。終了したスレッドの分は含まない
+    int recorderCount() {
+        synchronized (this.recorders) {
+            this.removeRetiredRecorders();
+            return this.recorders.size();
+        }
+    }
+
+    // 終了したスレッドの記録を retired に足して取り除く。 recorders のロックを持って呼ぶこと。
+    // 終了を isAlive で確かめてから読むので、そのスレッドが書いた値はすべて見える
+    private void removeRetiredRecorders() {
+        for (Iterator<Recorder> it = this.recorders.iterator(); it.hasNext(); ) {
+            Recorder x = it.next();
+            Thread owner = x.owner.get();
+            if (owner != null && owner.isAlive()) continue;
+
+            this.retired.add(x);
+            it.remove();
+        }
+    }
+
+    static final class Recorder {
+        final boolean recordsTimes;
+        final long[] counts = new long[COUNTER_COUNT];
+        final long[] histograms;
+        // 記録するスレッド。スレッドが回収されるのを妨げないように弱参照で持つ
+        final WeakReference<Thread> owner;
+
+        Recorder(boolean recordsTimes, Thread owner) {
+            this.recordsTimes = recordsTimes;
+            this.histograms = recordsTimes ? new long[PHASE_COUNT * HISTOGRAM_BUCKET_COUNT] : null;
+            this.owner = new WeakReference<>(owner);
+        }
+
+        void recordTime(int phase, long nanos) {
+            int bucket = nanos < 2 ? 0 : Math.min(HISTOGRAM_BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(nanos));
+            this.histograms[phase * HISTOGRAM_BUCKET_COUNT + bucket]++;
+        }
+
+        void add(Recorder other) {
+            for (int i = 0; i < this.counts.length; i++)
+                this.counts[i] += other.counts[i];
+            if (this.histograms != null) {
+                for (int i = 0; i < this.histograms.length; i++)
+                    this.histograms[i] += other.histograms[i];
+            }
+        }
+
+        void reset() {
+            for (int i = 0; i < this.counts.length; i++)
+                this.counts[i] = 0;
+            if (this.histograms != null) {
+                for (int i = 0; i < this.histograms.length; i++)
+                    this.histograms[i] = 0;
+            }
+        }
+    }
+}
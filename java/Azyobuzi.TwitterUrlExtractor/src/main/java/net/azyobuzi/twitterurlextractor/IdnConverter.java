@@ -0,0 +1,340 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.nio.CharBuffer;
+import java.text.Normalizer;
+import java.util.Arrays;
+
+/**
+ * URL のホストを ASCII にする。 ASCII 以外の文字を含むラベルは Punycode にして xn-- を付ける。
+ * ホストはすべて小文字にする。 ASCII 以外の文字を含むなら NFKC で正規化してから小文字にして変換する。
+ * IDNA2003 の nameprep の対応表や、禁止文字と双方向文字の規則の検査はしないので、 java.net.IDN#toASCII と結果が違う場合がある。
+ * 変換した結果は元のホストの文字列をキーにして保持し、キャッシュに当たればアロケーションは発生しない。
+ * 容量は固定で、 TcoCache と同じく CLOCK 法で追い出し、ストライプに分けたロックで複数のスレッドから同時に使える。
+ */
+public final class IdnConverter {
+    public static final String ACE_PREFIX = "xn--";
+
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    // RFC 3492 のパラメーター
+    private static final int BASE = 36;
+    private static final int TMIN = 1;
+    private static final int TMAX = 26;
+    private static final int SKEW = 38;
+    private static final int DAMP = 700;
+    private static final int INITIAL_BIAS = 72;
+    private static final int INITIAL_N = 0x80;
+
+    private static final ThreadLocal<Encoder> localEncoder = new ThreadLocal<Encoder>() {
+        @Override
+        protected Encoder initialValue() {
+            return new Encoder();
+        }
+    };
+
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public IdnConverter(int capacity) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+
+        int stripeCount = ClockTable.stripeCount(capacity / 16);
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++)
+            this.stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+    }
+
+    // 変換できない（ラベルが 63 文字を超える）なら null
+    public String toAscii(char[] text, int start, int end) {
+        if (start < 0 || start > end || end > text.length)
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + text.length);
+
+        int hash = hash(text, start, end);
+        Stripe stripe = this.stripes[hash & this.stripeMask];
+        String result = stripe.get(text, start, end, hash);
+        if (result != null) return result;
+
+        result = localEncoder.get().toAscii(text, start, end);
+        if (result != null) stripe.put(new String(text, start, end - start), hash, result);
+        return result;
+    }
+
+    public String toAscii(CharSequence text, int start, int end) {
+        if (start < 0 || start > end || end > text.length())
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + text.length());
+
+        // 作業領域にコピーして char[] と同じように扱う
+        char[] chars = localEncoder.get().input(end - start);
+        for (int i = start; i < end; i++)
+            chars[i - start] = text.charAt(i);
+        return this.toAscii(chars, 0, end - start);
+    }
+
+    public String toAscii(CharSequence host) {
+        return this.toAscii(host, 0, host.length());
+    }
+
+    // Extractor#extractWithDetails で text から抽出した buffer の index 番目の URL のホスト
+    public String toAscii(CharSequence text, EntityBuffer buffer, int index) {
+        int hostStartIndex = buffer.getHostStartIndex(index);
+        return this.toAscii(text, hostStartIndex, hostStartIndex + buffer.getHostLength(index));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                size += x.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                x.clear();
+            }
+        }
+    }
+
+    private static int hash(char[] text, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + text[i];
+        return ClockTable.mix(h);
+    }
+
+    private static boolean isLabelSeparator(char c) {
+        return c == '.' || c == '。' || c == '．' || c == '｡';
+    }
+
+    private static int adapt(int delta, int pointCount, boolean first) {
+        delta = first ? delta / DAMP : delta / 2;
+        delta += delta / pointCount;
+        int k = 0;
+        while (delta > ((BASE - TMIN) * TMAX) / 2) {
+            delta /= BASE - TMIN;
+            k += BASE;
+        }
+        return k + (BASE - TMIN + 1) * delta / (delta + SKEW);
+    }
+
+    private static char encodeDigit(int d) {
+        return (char) (d < 26 ? 'a' + d : '0' + d - 26);
+    }
+
+    // スレッドごとの作業領域。変換結果の String 以外は使い回す
+    private static final class Encoder {
+        private char[] input = new char[64];
+        private char[] lower = new char[64];
+        private int[] codePoints = new int[64];
+        private char[] output = new char[128];
+        private int outputLength;
+
+        char[] input(int length) {
+            if (this.input.length < length)
+                this.input = new char[Math.max(length, this.input.length * 2)];
+            return this.input;
+        }
+
+        String toAscii(char[] text, int start, int end) {
+            this.outputLength = 0;
+
+            boolean ascii = true;
+            for (int i = start; i < end; i++) {
+                if (text[i] >= 0x80) {
+                    ascii = false;
+                    break;
+                }
+            }
+
+            if (ascii) {
+                int labelLength = 0;
+                for (int i = start; i < end; i++) {
+                    char c = text[i];
+                    labelLength = c == '.' ? 0 : labelLength + 1;
+                    if (labelLength > MAX_LABEL_LENGTH) return null;
+                    this.append((char) TldTable.toLower(c));
+                }
+                return new String(this.output, 0, this.outputLength);
+            }
+
+            // 正規化してから小文字にする。 ℌ などは NFKC で大文字になる
+            char[] source = text;
+            int sourceStart = start;
+            int sourceEnd = end;
+            CharBuffer host = CharBuffer.wrap(text, start, end - start);
+            if (!Normalizer.isNormalized(host, Normalizer.Form.NFKC)) {
+                source = Normalizer.normalize(host, Normalizer.Form.NFKC).toCharArray();
+                sourceStart = 0;
+                sourceEnd = source.length;
+            }
+
+            char[] chars = this.lower;
+            int len = 0;
+            for (int i = sourceStart; i < sourceEnd; ) {
+                int cp = Character.codePointAt(source, i, sourceEnd);
+                i += Character.charCount(cp);
+                if (len + 2 > chars.length) chars = this.lower = Arrays.copyOf(chars, chars.length * 2);
+                len += Character.toChars(Character.toLowerCase(cp), chars, len);
+            }
+
+            int labelStart = 0;
+            for (int i = 0; i <= len; i++) {
+                if (i < len && !isLabelSeparator(chars[i])) continue;
+                if (!this.appendLabel(chars, labelStart, i)) return null;
+                if (i < len) this.append('.');
+                labelStart = i + 1;
+            }
+            return new String(this.output, 0, this.outputLength);
+        }
+
+        private boolean appendLabel(char[] chars, int start, int end) {
+            int labelOutputStart = this.outputLength;
+
+            int count = 0;
+            int basicCount = 0;
+            for (int i = start; i < end; ) {
+                int cp = Character.codePointAt(chars, i, end);
+                i += Character.charCount(cp);
+                if (count == this.codePoints.length)
+                    this.codePoints = Arrays.copyOf(this.codePoints, count * 2);
+                this.codePoints[count++] = cp;
+                if (cp < 0x80) basicCount++;
+            }
+
+            if (basicCount == count) {
+                for (int i = 0; i < count; i++)
+                    this.append((char) this.codePoints[i]);
+            } else if (!this.appendPunycode(count, basicCount)) {
+                return false;
+            }
+
+            return this.outputLength - labelOutputStart <= MAX_LABEL_LENGTH;
+        }
+
+        // RFC 3492 の符号化
+        private boolean appendPunycode(int count, int basicCount) {
+            int[] codePoints = this.codePoints;
+
+            for (int i = 0; i < ACE_PREFIX.length(); i++)
+                this.append(ACE_PREFIX.charAt(i));
+            for (int i = 0; i < count; i++) {
+                if (codePoints[i] < 0x80) this.append((char) codePoints[i]);
+            }
+            if (basicCount > 0) this.append('-');
+
+            int n = INITIAL_N;
+            int delta = 0;
+            int bias = INITIAL_BIAS;
+            for (int h = basicCount; h < count; n++) {
+                int m = Integer.MAX_VALUE;
+                for (int i = 0; i < count; i++) {
+                    int cp = codePoints[i];
+                    if (cp >= n && cp < m) m = cp;
+                }
+
+                if (m - n > (Integer.MAX_VALUE - delta) / (h + 1)) return false;
+                delta += (m - n) * (h + 1);
+                n = m;
+
+                for (int i = 0; i < count; i++) {
+                    int cp = codePoints[i];
+                    if (cp < n && ++delta < 0) return false;
+                    if (cp != n) continue;
+
+                    int q = delta;
+                    for (int k = BASE; ; k += BASE) {
+                        int t = k <= bias ? TMIN : k >= bias + TMAX ? TMAX : k - bias;
+                        if (q < t) break;
+                        this.append(encodeDigit(t + (q - t) % (BASE - t)));
+                        q = (q - t) / (BASE - t);
+                    }
+                    this.append(encodeDigit(q));
+
+                    bias = adapt(delta, h + 1, h == basicCount);
+                    delta = 0;
+                    h++;
+                }
+                delta++;
+            }
+            return true;
+        }
+
+        private void append(char c) {
+            if (this.outputLength == this.output.length)
+                this.output = Arrays.copyOf(this.output, this.output.length * 2);
+            this.output[this.outputLength++] = c;
+        }
+    }
+
+    private static final class Stripe {
+        private final ClockTable table;
+
+        // エントリーごとの情報
+        private final String[] hosts;
+        private final String[] results;
+
+        Stripe(int capacity) {
+            this.table = new ClockTable(capacity);
+            this.hosts = new String[capacity];
+            this.results = new String[capacity];
+        }
+
+        synchronized String get(char[] text, int start, int end, int hash) {
+            ClockTable table = this.table;
+            for (int entry = table.first(hash); entry != ClockTable.NOT_FOUND; entry = table.next()) {
+                if (equals(this.hosts[entry], text, start, end)) {
+                    table.touch(entry);
+                    return this.results[entry];
+                }
+            }
+            return null;
+        }
+
+        synchronized void put(String host, int hash, String result) {
+            int entry = this.find(host, hash);
+            if (entry == ClockTable.NOT_FOUND) {
+                entry = this.table.add(hash);
+                if (entry == ClockTable.NOT_FOUND) {
+                    int evicted = this.table.evict();
+                    this.hosts[evicted] = null;
+                    this.results[evicted] = null;
+                    entry = this.table.add(hash);
+                }
+                this.hosts[entry] = host;
+            }
+
+            this.results[entry] = result;
+        }
+
+        int size() {
+            return this.table.size();
+        }
+
+        void clear() {
+            this.table.clear();
+            Arrays.fill(this.hosts, null);
+            Arrays.fill(this.results, null);
+        }
+
+        private int find(String host, int hash) {
+            ClockTable table = this.table;
+            for (int entry = table.first(hash); entry != ClockTable.NOT_FOUND; entry = table.next()) {
+                if (this.hosts[entry].equals(host)) return entry;
+            }
+            return ClockTable.NOT_FOUND;
+        }
+
+        private static boolean equals(String host, char[] text, int start, int end) {
+            if (host.length() != end - start) return false;
+            for (int i = start; i < end; i++) {
+                if (host.charAt(i - start) != text[i]) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -31,4 +31,8 @@ class IntList {
     public int last() {
         return this.array[this.count - 1];
     }
+
+    public int removeLast() {
+        return this.array[--this.count];
+    }
 }
@@ -0,0 +1,351 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * テキストを HTML エスケープして書き出し、 {@link Extractor#extractEntities(String, EntityBuffer)} で見つけた
+ * URL 、ハッシュタグ、メンション、キャッシュタグを a 要素にする。
+ * 抽出した位置をもとに元のテキストから出力先へ直接書き込むので、途中の文字列は作らず、出力先に書く以外のアロケーションは発生しない。
+ * リンク先と表示する文字列は Template で変えられる。
+ * 作業領域を持つのでスレッドセーフではない。スレッドごとに作ること。
+ */
+public final class Linkifier {
+    public interface Template {
+        // text[start, end) のエンティティのリンク先を out に書く。 type は EntityInfo.URL などの種類。書いたものはエスケープされる
+        void appendHref(char[] text, int start, int end, int type, Appendable out) throws IOException;
+
+        // リンクとして表示する文字列を out に書く。書いたものはエスケープされる
+        void appendDisplayText(char[] text, int start, int end, int type, Appendable out) throws IOException;
+    }
+
+    /**
+     * スキームのない URL には http:// を付け、ハッシュタグ、メンション、キャッシュタグは Twitter のページにリンクする。
+     * URL の表示はスキームを除き、 maxDisplayUrlLength 文字を超える部分を … にする。
+     */
+    public static class DefaultTemplate implements Template {
+        private final int maxDisplayUrlLength;
+
+        public DefaultTemplate() {
+            this(Integer.MAX_VALUE);
+        }
+
+        public DefaultTemplate(int maxDisplayUrlLength) {
+            if (maxDisplayUrlLength < 1)
+                throw new IllegalArgumentException("maxDisplayUrlLength must be positive");
+            this.maxDisplayUrlLength = maxDisplayUrlLength;
+        }
+
+        @Override
+        public void appendHref(char[] text, int start, int end, int type, Appendable out) throws IOException {
+            switch (type) {
+                case EntityInfo.URL:
+                    if (schemeLength(text, start, end) == 0) out.append("http://");
+                    appendChars(text, start, end, out);
+                    break;
+                case EntityInfo.HASHTAG:
+                    out.append("https://twitter.com/hashtag/");
+                    appendChars(text, start + 1, end, out);
+                    break;
+                case EntityInfo.MENTION:
+                    out.append("https://twitter.com/");
+                    appendChars(text, start + 1, end, out);
+                    break;
+                case EntityInfo.CASHTAG:
+                    out.append("https://twitter.com/search?q=%24");
+                    appendChars(text, start + 1, end, out);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid type: " + type);
+            }
+        }
+
+        @Override
+        public void appendDisplayText(char[] text, int start, int end, int type, Appendable out) throws IOException {
+            if (type != EntityInfo.URL) {
+                appendChars(text, start, end, out);
+                return;
+            }
+
+            start += schemeLength(text, start, end);
+            if (end - start <= this.maxDisplayUrlLength) {
+                appendChars(text, start, end, out);
+                return;
+            }
+
+            // サロゲートペアの途中で切らない
+            int cut = start + this.maxDisplayUrlLength;
+            if (Character.isLowSurrogate(text[cut]) && Character.isHighSurrogate(text[cut - 1])) cut--;
+            appendChars(text, start, cut, out);
+            out.append('…');
+        }
+
+        // http:// なら 7 、 https:// なら 8 、スキームがなければ 0
+        protected static int schemeLength(char[] text, int start, int end) {
+            if (end - start < 7 || (text[start] | 0x20) != 'h') return 0;
+            int i = start + 4;
+            if ((text[i] | 0x20) == 's') i++;
+            return i + 3 <= end && text[i] == ':' && text[i + 1] == '/' && text[i + 2] == '/' ? i + 3 - start : 0;
+        }
+
+        protected static void appendChars(char[] text, int start, int end, Appendable out) throws IOException {
+            for (int i = start; i < end; i++)
+                out.append(text[i]);
+        }
+    }
+
+    private final Extractor extractor;
+    private final Template template;
+    private final EntityBuffer buffer = new EntityBuffer();
+    private final AppendableOutput appendableOutput = new AppendableOutput();
+    private final WriterOutput writerOutput = new WriterOutput();
+    private final ByteBufferOutput byteBufferOutput = new ByteBufferOutput();
+
+    public Linkifier(Extractor extractor) {
+        this(extractor, new DefaultTemplate());
+    }
+
+    public Linkifier(Extractor extractor, Template template) {
+        if (extractor == null)
+            throw new IllegalArgumentException("extractor is null");
+        if (template == null)
+            throw new IllegalArgumentException("template is null");
+
+        this.extractor = extractor;
+        this.template = template;
+    }
+
+    public Template getTemplate() {
+        return this.template;
+    }
+
+    // StringBuilder なら文字の並びをまとめて追加する
+    public void render(String text, Appendable out) throws IOException {
+        AppendableOutput output = this.appendableOutput;
+        output.out = out;
+        output.builder = out instanceof StringBuilder ? (StringBuilder) out : null;
+        try {
+            this.renderTo(text, output);
+        } finally {
+            output.out = null;
+            output.builder = null;
+        }
+    }
+
+    public void render(String text, Writer out) throws IOException {
+        WriterOutput output = this.writerOutput;
+        output.out = out;
+        try {
+            this.renderTo(text, output);
+        } finally {
+            output.out = null;
+        }
+    }
+
+    // out の position から UTF-8 で書き込み、 position を進める。入りきらなければ BufferOverflowException が発生する。
+    // 対になっていないサロゲートは ? にする。
+    public void render(String text, ByteBuffer out) {
+        ByteBufferOutput output = this.byteBufferOutput;
+        output.out = out;
+        output.highSurrogate = 0;
+        try {
+            this.renderTo(text, output);
+        } catch (IOException e) {
+            // ByteBuffer への書き込みでは発生しない
+            throw new IllegalStateException(e);
+        } finally {
+            output.out = null;
+        }
+    }
+
+    private void renderTo(String text, Output out) throws IOException {
+        if (text == null || text.length() == 0) return;
+
+        EntityBuffer buffer = this.buffer;
+        int count = this.extractor.extractEntities(text, buffer);
+        // extractEntities がコピーしたもの
+        char[] chars = buffer.chars(text.length());
+
+        int index = 0;
+        for (int i = 0; i < count; i++) {
+            int start = buffer.getStartIndex(i);
+            int end = start + buffer.getLength(i);
+            int type = buffer.getType(i);
+
+            out.writeEscaped(chars, index, start);
+            out.write("<a href=\"");
+            this.template.appendHref(chars, start, end, type, out);
+            out.write("\">");
+            this.template.appendDisplayText(chars, start, end, type, out);
+            out.write("</a>");
+            index = end;
+        }
+        out.writeEscaped(chars, index, text.length());
+        out.finish();
+    }
+
+    private static String escapeOf(char c) {
+        switch (c) {
+            case '&':
+                return "&amp;";
+            case '<':
+                return "&lt;";
+            case '>':
+                return "&gt;";
+            case '"':
+                return "&quot;";
+            case '\'':
+                return "&#39;";
+            default:
+                return null;
+        }
+    }
+
+    // Template に渡す Appendable 。 append したものはエスケープして書く
+    private abstract static class Output implements Appendable {
+        abstract void write(char[] text, int start, int end) throws IOException;
+
+        abstract void write(char c) throws IOException;
+
+        void write(String s) throws IOException {
+            for (int i = 0; i < s.length(); i++)
+                this.write(s.charAt(i));
+        }
+
+        void finish() throws IOException {
+        }
+
+        // エスケープしない文字はまとめて書く
+        void writeEscaped(char[] text, int start, int end) throws IOException {
+            int runStart = start;
+            for (int i = start; i < end; i++) {
+                String escaped = escapeOf(text[i]);
+                if (escaped == null) continue;
+                if (runStart < i) this.write(text, runStart, i);
+                this.write(escaped);
+                runStart = i + 1;
+            }
+            if (runStart < end) this.write(text, runStart, end);
+        }
+
+        @Override
+        public Appendable append(CharSequence csq) throws IOException {
+            return csq == null ? this.append("null") : this.append(csq, 0, csq.length());
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) throws IOException {
+            if (csq == null) return this.append("null", start, end);
+            for (int i = start; i < end; i++)
+                this.append(csq.charAt(i));
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) throws IOException {
+            String escaped = escapeOf(c);
+            if (escaped == null) this.write(c);
+            else this.write(escaped);
+            return this;
+        }
+    }
+
+    private static final class AppendableOutput extends Output {
+        Appendable out;
+        StringBuilder builder;
+
+        @Override
+        void write(char[] text, int start, int end) throws IOException {
+            if (this.builder != null) {
+                this.builder.append(text, start, end - start);
+            } else {
+                for (int i = start; i < end; i++)
+                    this.out.append(text[i]);
+            }
+        }
+
+        @Override
+        void write(char c) throws IOException {
+            this.out.append(c);
+        }
+
+        @Override
+        void write(String s) throws IOException {
+            this.out.append(s);
+        }
+    }
+
+    private static final class WriterOutput extends Output {
+        Writer out;
+
+        @Override
+        void write(char[] text, int start, int end) throws IOException {
+            this.out.write(text, start, end - start);
+        }
+
+        @Override
+        void write(char c) throws IOException {
+            this.out.write(c);
+        }
+
+        @Override
+        void write(String s) throws IOException {
+            this.out.write(s);
+        }
+    }
+
+    private static final class ByteBufferOutput extends Output {
+        ByteBuffer out;
+        // 直前の上位サロゲート。なければ 0
+        char highSurrogate;
+
+        @Override
+        void write(char[] text, int start, int end) {
+            for (int i = start; i < end; i++)
+                this.write(text[i]);
+        }
+
+        @Override
+        void write(char c) {
+            ByteBuffer out = this.out;
+
+            if (this.highSurrogate != 0) {
+                char high = this.highSurrogate;
+                this.highSurrogate = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    out.put((byte) (0xf0 | (cp >> 18)));
+                    out.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+                    out.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+                    out.put((byte) (0x80 | (cp & 0x3f)));
+                    return;
+                }
+                out.put((byte) '?');
+            }
+
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xc0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c)) {
+                this.highSurrogate = c;
+            } else if (Character.isLowSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xe0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+                out.put((byte) (0x80 | (c & 0x3f)));
+            }
+        }
+
+        @Override
+        void finish() {
+            if (this.highSurrogate != 0) {
+                this.highSurrogate = 0;
+                this.out.put((byte) '?');
+            }
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * 1 行に 1 ツイートの JSON が書かれたアーカイブファイルをメモリマップし、
+ * トップレベルの "text" の値から URL を抽出する。
+ * ファイルは行単位に揃えた領域に分割して、それぞれを並列に処理する。
+ * 値のエスケープはワーカーごとの作業領域上で UTF-8 のまま解除し、 String は作らない。
+ */
+public final class NdjsonArchiveScanner {
+    public interface TweetHandler {
+        // 複数のスレッドから同時に呼ばれる。 entities は呼び出しが終わると再利用される。
+        // lineOffset はファイル先頭からの行のバイト位置で、 entities の位置は値のエスケープを解除した文字列上のもの。
+        void onTweet(long lineOffset, EntityBuffer entities);
+    }
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    static final long REGION_SIZE = 64L * 1024 * 1024;
+    static final int MAX_LINE_LENGTH = 1024 * 1024;
+
+    private final Extractor extractor;
+    private final byte[] fieldName;
+    private final long regionSize;
+    private final int maxLineLength;
+
+    public NdjsonArchiveScanner(Extractor extractor) {
+        this(extractor, "text");
+    }
+
+    // 拡張ツイートなら "full_text" を指定する
+    public NdjsonArchiveScanner(Extractor extractor, String fieldName) {
+        this(extractor, fieldName, REGION_SIZE, MAX_LINE_LENGTH);
+    }
+
+    // テストで領域の境界を小さなファイルで確かめるため
+    NdjsonArchiveScanner(Extractor extractor, String fieldName, long regionSize, int maxLineLength) {
+        if (extractor == null)
+            throw new IllegalArgumentException("extractor is null");
+        if (fieldName == null || fieldName.isEmpty() || fieldName.indexOf('"') >= 0 || fieldName.indexOf('\\') >= 0)
+            throw new IllegalArgumentException("Invalid field name: " + fieldName);
+        if (regionSize < 1 || maxLineLength < 1)
+            throw new IllegalArgumentException("regionSize and maxLineLength must be positive");
+
+        this.extractor = extractor;
+        this.fieldName = fieldName.getBytes(UTF_8);
+        this.regionSize = regionSize;
+        this.maxLineLength = maxLineLength;
+    }
+
+    // フィールドが見つかったツイートの数を返す
+    public long scan(Path file, TweetHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long count = 0;
+            for (long start = 0; start < size; start += this.regionSize)
+                count += this.scanRegion(channel, size, start, Math.min(size, start + this.regionSize), handler);
+            return count;
+        }
+    }
+
+    public long scan(Path file, ForkJoinPool pool, TweetHandler handler) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<RegionTask> tasks = new ArrayList<>();
+            for (long start = 0; start < size; start += this.regionSize)
+                tasks.add(new RegionTask(this, channel, size, start, Math.min(size, start + this.regionSize), handler));
+
+            pool.invoke(new ScanTask(tasks));
+
+            long count = 0;
+            for (RegionTask x : tasks) {
+                if (x.exception != null) throw x.exception;
+                count += x.getRawResult();
+            }
+            return count;
+        }
+    }
+
+    // 開始位置が [start, end) にある行を処理する
+    private long scanRegion(FileChannel channel, long size, long start, long end, TweetHandler handler) throws IOException {
+        long mapStart = Math.max(0, start - 1);
+        long mapEnd = Math.min(size, end + this.maxLineLength);
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        map.order(ByteOrder.nativeOrder());
+        int mapLength = (int) (mapEnd - mapStart);
+        int regionEnd = (int) (end - mapStart);
+
+        // 直前の領域から続いている行は飛ばす
+        int lineStart = 0;
+        if (start > 0) {
+            lineStart = indexOf(map, (byte) '\n', 0, mapLength) + 1;
+            if (lineStart == 0) return 0;
+        }
+
+        EntityBuffer buffer = new EntityBuffer();
+        long count = 0;
+
+        while (lineStart < regionEnd) {
+            int lineEnd = indexOf(map, (byte) '\n', lineStart, mapLength);
+            if (lineEnd == -1) {
+                if (mapEnd < size)
+                    throw new IOException("Too long line at " + (mapStart + lineStart));
+                lineEnd = mapLength;
+            }
+
+            if (this.scanLine(map, lineStart, lineEnd, buffer)) {
+                handler.onTweet(mapStart + lineStart, buffer);
+                count++;
+            }
+
+            lineStart = lineEnd + 1;
+        }
+
+        return count;
+    }
+
+    private boolean scanLine(MappedByteBuffer map, int lineStart, int lineEnd, EntityBuffer buffer) {
+        int depth = 0;
+        boolean expectKey = false;
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            byte b = map.get(i);
+            switch (b) {
+                case '"':
+                    int stringStart = i + 1;
+                    i = skipString(map, stringStart, lineEnd);
+                    if (i == -1) return false;
+
+                    if (depth == 1 && expectKey) {
+                        expectKey = false;
+                        if (this.isFieldName(map, stringStart, i)) {
+                            int valueStart = skipWhitespace(map, i + 1, lineEnd);
+                            if (valueStart >= lineEnd || map.get(valueStart) != ':') return false;
+                            valueStart = skipWhitespace(map, valueStart + 1, lineEnd);
+                            if (valueStart >= lineEnd || map.get(valueStart) != '"') return false;
+
+                            valueStart++;
+                            int valueEnd = skipString(map, valueStart, lineEnd);
+                            if (valueEnd == -1) return false;
+
+                            byte[] bytes = buffer.bytes(valueEnd - valueStart);
+                            int len = unescape(map, valueStart, valueEnd, bytes);
+                            this.extractor.extractUtf8(bytes, 0, len, buffer);
+                            return true;
+                        }
+                    }
+                    break;
+                case '{':
+                    depth++;
+                    expectKey = true;
+                    break;
+                case '[':
+                    depth++;
+                    expectKey = false;
+                    break;
+                case '}':
+                case ']':
+                    depth--;
+                    break;
+                case ',':
+                    expectKey = depth == 1;
+                    break;
+                case ':':
+                    expectKey = false;
+                    break;
+            }
+        }
+
+        return false;
+    }
+
+    private boolean isFieldName(MappedByteBuffer map, int start, int end) {
+        byte[] fieldName = this.fieldName;
+        if (end - start != fieldName.length) return false;
+        for (int i = 0; i < fieldName.length; i++) {
+            if (map.get(start + i) != fieldName[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(MappedByteBuffer map, byte b, int start, int end) {
+        return Swar.indexOf(map, b, b, start, end);
+    }
+
+    private static int skipWhitespace(MappedByteBuffer map, int start, int end) {
+        int i = start;
+        while (i < end) {
+            byte b = map.get(i);
+            if (b != ' ' && b != '\t' && b != '\r') break;
+            i++;
+        }
+        return i;
+    }
+
+    // 閉じる " の位置を返す
+    private static int skipString(MappedByteBuffer map, int start, int end) {
+        for (int i = start; i < end; i++) {
+            i = Swar.indexOf(map, (byte) '"', (byte) '\\', i, end);
+            if (i == -1) return -1;
+            if (map.get(i) == '"') return i;
+            i++;
+        }
+        return -1;
+    }
+
+    // JSON 文字列のエスケープを解除して UTF-8 で dst に書き込む。エスケープを解除すると短くなるので dst は元の長さでよい。
+    private static int unescape(MappedByteBuffer map, int start, int end, byte[] dst) {
+        int n = 0;
+
+        for (int i = start; i < end; i++) {
+            byte b = map.get(i);
+            if (b != '\\' || i + 1 >= end) {
+                dst[n++] = b;
+                continue;
+            }
+
+            b = map.get(++i);
+            switch (b) {
+                case 'b':
+                    dst[n++] = '\b';
+                    break;
+                case 'f':
+                    dst[n++] = '\f';
+                    break;
+                case 'n':
+                    dst[n++] = '\n';
+                    break;
+                case 'r':
+                    dst[n++] = '\r';
+                    break;
+                case 't':
+                    dst[n++] = '\t';
+                    break;
+                case 'u':
+                    int c = i + 4 < end ? parseHex4(map, i + 1) : -1;
+                    if (c < 0) {
+                        dst[n++] = '\\';
+                        dst[n++] = 'u';
+                        break;
+                    }
+                    i += 4;
+
+                    int cp = c;
+                    if (Character.isHighSurrogate((char) c)) {
+                        int low = i + 6 < end && map.get(i + 1) == '\\' && map.get(i + 2) == 'u' ? parseHex4(map, i + 3) : -1;
+                        if (low >= 0 && Character.isLowSurrogate((char) low)) {
+                            cp = Character.toCodePoint((char) c, (char) low);
+                            i += 6;
+                        } else {
+                            cp = 0xfffd;
+                        }
+                    } else if (Character.isLowSurrogate((char) c)) {
+                        cp = 0xfffd;
+                    }
+
+                    n = writeUtf8(cp, dst, n);
+                    break;
+                default:
+                    // \" \\ \/
+                    dst[n++] = b;
+                    break;
+            }
+        }
+
+        return n;
+    }
+
+    private static int parseHex4(MappedByteBuffer map, int start) {
+        int result = 0;
+        for (int i = start; i < start + 4; i++) {
+            int b = map.get(i);
+            int d;
+            if (b >= '0' && b <= '9') d = b - '0';
+            else if (b >= 'a' && b <= 'f') d = b - 'a' + 10;
+            else if (b >= 'A' && b <= 'F') d = b - 'A' + 10;
+            else return -1;
+            result = (result << 4) | d;
+        }
+        return result;
+    }
+
+    private static int writeUtf8(int cp, byte[] dst, int n) {
+        if (cp < 0x80) {
+            dst[n++] = (byte) cp;
+        } else if (cp < 0x800) {
+            dst[n++] = (byte) (0xc0 | (cp >> 6));
+            dst[n++] = (byte) (0x80 | (cp & 0x3f));
+        } else if (cp < 0x10000) {
+            dst[n++] = (byte) (0xe0 | (cp >> 12));
+            dst[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            dst[n++] = (byte) (0x80 | (cp & 0x3f));
+        } else {
+            dst[n++] = (byte) (0xf0 | (cp >> 18));
+            dst[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+            dst[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+            dst[n++] = (byte) (0x80 | (cp & 0x3f));
+        }
+        return n;
+    }
+
+    private static class ScanTask extends RecursiveTask<Void> {
+        private final List<RegionTask> tasks;
+
+        ScanTask(List<RegionTask> tasks) {
+            this.tasks = tasks;
+        }
+
+        @Override
+        protected Void compute() {
+            invokeAll(this.tasks);
+            return null;
+        }
+    }
+
+    private static class RegionTask extends RecursiveTask<Long> {
+        private final NdjsonArchiveScanner scanner;
+        private final FileChannel channel;
+        private final long size;
+        private final long start;
+        private final long end;
+        private final TweetHandler handler;
+        IOException exception;
+
+        RegionTask(NdjsonArchiveScanner scanner, FileChannel channel, long size, long start, long end, TweetHandler handler) {
+            this.scanner = scanner;
+            this.channel = channel;
+            this.size = size;
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+        }
+
+        @Override
+        protected Long compute() {
+            try {
+                return this.scanner.scanRegion(this.channel, this.size, this.start, this.end, this.handler);
+            } catch (IOException e) {
+                this.exception = e;
+                return 0L;
+            }
+        }
+    }
+}
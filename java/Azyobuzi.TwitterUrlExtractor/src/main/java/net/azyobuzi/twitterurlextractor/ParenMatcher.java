@@ -0,0 +1,57 @@
+package net.azyobuzi.twitterurlextractor;
+
+// パスの ( に対応する ) の位置を、走査した範囲ごとに記録しておく。
+// 範囲は ( から始まり、すべての ( が閉じるか、パスに使えない文字か文末で終わる。
+// 範囲が重ならないように走査するので、入れ子や閉じていない括弧がいくつあっても、文字数に比例する時間で済む。
+final class ParenMatcher {
+    static final int UNKNOWN = -2;
+    static final int NOT_CLOSED = -1;
+
+    private final IntList openIndexes = new IntList();
+    private int[] closeIndexes = new int[16];
+    private int regionStart;
+    private int regionEnd;
+
+    // 別の文字列を走査する前に呼ぶ
+    public void initialize() {
+        this.openIndexes.initialize();
+        this.regionStart = 0;
+        this.regionEnd = 0;
+    }
+
+    // index の ( に対応する ) の位置。閉じていなければ NOT_CLOSED 、まだ走査していなければ UNKNOWN
+    public int get(int index) {
+        return index >= this.regionStart && index < this.regionEnd
+                ? this.closeIndexes[index - this.regionStart]
+                : UNKNOWN;
+    }
+
+    public void startRegion(int index) {
+        this.openIndexes.initialize();
+        this.regionStart = index;
+        this.regionEnd = index;
+    }
+
+    public void open(int index) {
+        int offset = index - this.regionStart;
+        if (offset >= this.closeIndexes.length) {
+            int[] newArray = new int[Math.max(offset + 1, this.closeIndexes.length * 2)];
+            System.arraycopy(this.closeIndexes, 0, newArray, 0, this.closeIndexes.length);
+            this.closeIndexes = newArray;
+        }
+        this.openIndexes.add(index);
+    }
+
+    // すべての ( が閉じたら true
+    public boolean close(int index) {
+        this.closeIndexes[this.openIndexes.removeLast() - this.regionStart] = index;
+        return this.openIndexes.size() == 0;
+    }
+
+    // 残っている ( は閉じていないものとする
+    public void endRegion(int index) {
+        while (this.openIndexes.size() > 0)
+            this.closeIndexes[this.openIndexes.removeLast() - this.regionStart] = NOT_CLOSED;
+        this.regionEnd = index;
+    }
+}
@@ -0,0 +1,103 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * 巨大なテキストを一定サイズのチャンクで読みながら URL を抽出する。
+ * 使用するメモリはチャンクサイズの 2 倍で一定。
+ *
+ * URL は空白や制御文字をまたがず、 Extractor もそれらの文字の先を読まないので、
+ * チャンクを最後の空白で区切り、その空白以降を次のチャンクに持ち越すことで、
+ * チャンクの境界をまたぐ URL も全体を一度に処理したときと同じ結果になる。
+ * ただし、ウィンドウ全体に空白がひとつもない場合はその場で区切るので、そこをまたぐ URL は分断される。
+ */
+public final class StreamingExtractor {
+    public interface EntityHandler {
+        // startIndex はストリームの先頭からの UTF-16 での位置
+        void onEntity(long startIndex, int length);
+    }
+
+    private static final int DEFAULT_CHUNK_SIZE = 8192;
+
+    private final Extractor extractor;
+    private final int chunkSize;
+
+    public StreamingExtractor(Extractor extractor) {
+        this(extractor, DEFAULT_CHUNK_SIZE);
+    }
+
+    public StreamingExtractor(Extractor extractor, int chunkSize) {
+        if (extractor == null)
+            throw new IllegalArgumentException("extractor is null");
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("chunkSize must be positive");
+
+        this.extractor = extractor;
+        this.chunkSize = chunkSize;
+    }
+
+    // 見つかった URL の数を返す
+    public long extract(Reader reader, EntityHandler handler) throws IOException {
+        char[] window = new char[this.chunkSize * 2];
+        EntityBuffer buffer = new EntityBuffer();
+        long windowStartIndex = 0;
+        long entityCount = 0;
+        int len = 0;
+
+        while (true) {
+            int n = reader.read(window, len, window.length - len);
+            if (n < 0) {
+                // 残りをすべて処理して終了
+                return entityCount + this.emit(window, len, windowStartIndex, buffer, handler);
+            }
+
+            len += n;
+            if (len < window.length) continue;
+
+            int cut = lastBoundaryIndex(window, len);
+            if (cut == 0) {
+                // 空白がないので区切れない。全体を処理して捨てる
+                entityCount += this.emit(window, len, windowStartIndex, buffer, handler);
+                windowStartIndex += len;
+                len = 0;
+            } else {
+                // 最後の空白までを処理し、空白以降を持ち越す
+                entityCount += this.emit(window, cut + 1, windowStartIndex, buffer, handler);
+                System.arraycopy(window, cut, window, 0, len - cut);
+                windowStartIndex += cut;
+                len -= cut;
+            }
+        }
+    }
+
+    public long extract(ReadableByteChannel channel, Charset charset, EntityHandler handler) throws IOException {
+        CharsetDecoder decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return this.extract(Channels.newReader(channel, decoder, this.chunkSize), handler);
+    }
+
+    public long extract(ReadableByteChannel channel, EntityHandler handler) throws IOException {
+        return this.extract(channel, Charset.forName("UTF-8"), handler);
+    }
+
+    private int emit(char[] window, int len, long windowStartIndex, EntityBuffer buffer, EntityHandler handler) {
+        int count = this.extractor.extract(window, 0, len, buffer);
+        for (int i = 0; i < count; i++)
+            handler.onEntity(windowStartIndex + buffer.getStartIndex(i), buffer.getLength(i));
+        return count;
+    }
+
+    private static int lastBoundaryIndex(char[] window, int len) {
+        for (int i = len - 1; i > 0; i--) {
+            if (window[i] <= ' ') return i;
+        }
+        return 0;
+    }
+}
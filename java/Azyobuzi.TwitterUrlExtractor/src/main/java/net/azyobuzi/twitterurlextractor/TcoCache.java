@@ -0,0 +1,195 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * t.co の短縮コードから展開先 URL を引くキャッシュ。
+ * コードは {@link EntityBuffer#getTcoId(int)} の long のまま扱い、キャッシュに当たれば保持している String を返すだけなので、
+ * アロケーションが発生しない。外れたら Loader で読み込んで追加する。
+ * 容量は固定で、いっぱいになったら CLOCK 法で最近使われていないものを追い出す。
+ * ロックを分割したストライプに振り分けるので、複数のスレッドから同時に使える。
+ */
+public final class TcoCache {
+    public interface Loader {
+        // 見つからなければ null を返す。複数のスレッドから同時に呼ばれることがある
+        String load(String code) throws IOException;
+    }
+
+    public static final long NO_ID = -1;
+
+    // 数字、英大文字、英小文字の順に 1 から 62
+    private static final int RADIX = 62;
+    private static final int MAX_CODE_LENGTH = 10;
+
+    private final Loader loader;
+    private final Stripe[] stripes;
+    private final int stripeMask;
+
+    public TcoCache(int capacity, Loader loader) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive");
+        if (loader == null)
+            throw new IllegalArgumentException("loader is null");
+
+        this.loader = loader;
+
+        int stripeCount = ClockTable.stripeCount(capacity / 16);
+        this.stripes = new Stripe[stripeCount];
+        this.stripeMask = stripeCount - 1;
+        for (int i = 0; i < stripeCount; i++)
+            this.stripes[i] = new Stripe(capacity / stripeCount + (i < capacity % stripeCount ? 1 : 0));
+    }
+
+    // 展開先を返す。キャッシュになければ Loader で読み込む
+    public String get(long id) throws IOException {
+        if (id <= 0)
+            throw new IllegalArgumentException("Invalid t.co ID: " + id);
+
+        int hash = ClockTable.mix(id);
+        Stripe stripe = this.stripes[hash & this.stripeMask];
+        String url = stripe.get(id, hash);
+        if (url != null) return url;
+
+        url = this.loader.load(toCode(id));
+        if (url != null) stripe.put(id, hash, url);
+        return url;
+    }
+
+    // buffer の index 番目が t.co の URL でなければ null
+    public String get(EntityBuffer buffer, int index) throws IOException {
+        long id = buffer.getTcoId(index);
+        return id == NO_ID ? null : this.get(id);
+    }
+
+    // Loader を呼ばずに、キャッシュにあるものだけを返す
+    public String getIfPresent(long id) {
+        if (id <= 0) return null;
+        int hash = ClockTable.mix(id);
+        return this.stripes[hash & this.stripeMask].get(id, hash);
+    }
+
+    public void put(long id, String url) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Invalid t.co ID: " + id);
+        if (url == null)
+            throw new IllegalArgumentException("url is null");
+
+        int hash = ClockTable.mix(id);
+        this.stripes[hash & this.stripeMask].put(id, hash, url);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                size += x.size();
+            }
+        }
+        return size;
+    }
+
+    public void clear() {
+        for (Stripe x : this.stripes) {
+            synchronized (x) {
+                x.clear();
+            }
+        }
+    }
+
+    // 10 文字までの英数字を、 1 から 62 の桁で表した数にする。桁に 0 を使わないので、文字列が違えば値も違う
+    public static long toId(CharSequence code) {
+        int len = code.length();
+        if (len == 0 || len > MAX_CODE_LENGTH) return NO_ID;
+
+        long id = 0;
+        for (int i = 0; i < len; i++) {
+            int d = digit(code.charAt(i));
+            if (d < 0) return NO_ID;
+            id = id * RADIX + d;
+        }
+        return id;
+    }
+
+    static long toId(char[] text, int start, int end) {
+        if (end - start > MAX_CODE_LENGTH) return NO_ID;
+
+        long id = 0;
+        for (int i = start; i < end; i++)
+            id = id * RADIX + digit(text[i]);
+        return id;
+    }
+
+    public static String toCode(long id) {
+        if (id <= 0)
+            throw new IllegalArgumentException("Invalid t.co ID: " + id);
+
+        char[] chars = new char[MAX_CODE_LENGTH];
+        int i = chars.length;
+        while (id > 0) {
+            int d = (int) ((id - 1) % RADIX);
+            chars[--i] = d < 10 ? (char) ('0' + d) : d < 36 ? (char) ('A' + d - 10) : (char) ('a' + d - 36);
+            id = (id - 1) / RADIX;
+        }
+        return new String(chars, i, chars.length - i);
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') return c - '0' + 1;
+        if (c >= 'A' && c <= 'Z') return c - 'A' + 11;
+        if (c >= 'a' && c <= 'z') return c - 'a' + 37;
+        return -1;
+    }
+
+    private static final class Stripe {
+        private final ClockTable table;
+
+        // エントリーごとの情報
+        private final long[] ids;
+        private final String[] urls;
+
+        Stripe(int capacity) {
+            this.table = new ClockTable(capacity);
+            this.ids = new long[capacity];
+            this.urls = new String[capacity];
+        }
+
+        synchronized String get(long id, int hash) {
+            int entry = this.find(id, hash);
+            if (entry == ClockTable.NOT_FOUND) return null;
+            this.table.touch(entry);
+            return this.urls[entry];
+        }
+
+        synchronized void put(long id, int hash, String url) {
+            int entry = this.find(id, hash);
+            if (entry == ClockTable.NOT_FOUND) {
+                entry = this.table.add(hash);
+                if (entry == ClockTable.NOT_FOUND) {
+                    this.urls[this.table.evict()] = null;
+                    entry = this.table.add(hash);
+                }
+                this.ids[entry] = id;
+            }
+
+            this.urls[entry] = url;
+        }
+
+        int size() {
+            return this.table.size();
+        }
+
+        void clear() {
+            this.table.clear();
+            Arrays.fill(this.urls, null);
+        }
+
+        private int find(long id, int hash) {
+            ClockTable table = this.table;
+            for (int entry = table.first(hash); entry != ClockTable.NOT_FOUND; entry = table.next()) {
+                if (this.ids[entry] == id) return entry;
+            }
+            return ClockTable.NOT_FOUND;
+        }
+    }
+}
@@ -0,0 +1,379 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * TLD の完全ハッシュ表 (CHD 法)。
+ * 小文字にしたキーを 1 本の char[] に詰めて持ち、 1 回の探索で見つかった候補を文字列で照合するので、
+ * ハッシュ値が衝突しても TLD でない文字列を TLD と判定することはない。
+ * 不変なので、 1 つのインスタンスを複数の Extractor やスレッドで共有できる。
+ * writeTo で書き出したものを readFrom で読み込めば、表を作り直さずに済む。
+ */
+public final class TldTable {
+    public static final int GTLD = 0;
+    public static final int CCTLD = 1;
+    public static final int SPECIAL_CCTLD = 2;
+    public static final int NOT_FOUND = -1;
+
+    // バケットあたりの平均キー数
+    private static final int BUCKET_SIZE = 4;
+    private static final int MAX_SEED = 1 << 20;
+    private static final long MULTIPLIER1 = 0x9E3779B97F4A7C15L;
+    private static final long MULTIPLIER2 = 0xC2B2AE3D27D4EB4FL;
+
+    // "TLDT"
+    private static final int MAGIC = 0x544c4454;
+    private static final int FORMAT_VERSION = 1;
+
+    // slots の要素はキーの位置 << 10 | 種類 << 8 | 長さ。空きスロットは長さが 0
+    private static final int TYPE_SHIFT = 8;
+    private static final int OFFSET_SHIFT = 10;
+    private static final int LENGTH_MASK = 0xff;
+    // キーの位置を slots の要素に入れられる上限
+    private static final int MAX_KEY_LENGTH = 1 << (32 - OFFSET_SHIFT);
+    // TLD は 1500 程度なので十分に大きい。壊れたファイルで大きな配列を確保しないようにする
+    private static final int MAX_SLOT_COUNT = 1 << 20;
+
+    private final long[] seeds;
+    private final int bucketShift;
+    private final int slotShift;
+    // 4 文字ずつ long に詰めて 1 語ずつ比べる形や、先頭 3 文字をスロットに入れる形も試したが、
+    // TLD は 2, 3 文字のものがほとんどで、 1 文字ずつ比べるほうが速かった
+    private final char[] keys;
+    private final int[] slots;
+    private final int shortestLength;
+    private final int longestLength;
+
+    private TldTable(long[] seeds, char[] keys, int[] slots, int shortestLength, int longestLength) {
+        this.seeds = seeds;
+        this.bucketShift = 64 - Integer.numberOfTrailingZeros(seeds.length);
+        this.slotShift = 64 - Integer.numberOfTrailingZeros(slots.length);
+        this.keys = keys;
+        this.slots = slots;
+        this.shortestLength = shortestLength;
+        this.longestLength = longestLength;
+    }
+
+    public static TldTable create(List<String> gTlds, List<String> ccTlds) {
+        return create(gTlds, ccTlds, Arrays.asList("co", "tv"));
+    }
+
+    public static TldTable create(List<String> gTlds, List<String> ccTlds, List<String> specialCcTlds) {
+        // 後から追加したものが優先。ただし specialCcTlds に含まれる ccTLD は追加しない
+        Map<String, Integer> tlds = new LinkedHashMap<>();
+        Set<String> specials = new HashSet<>();
+
+        if (gTlds != null) {
+            for (String x : gTlds)
+                putTld(tlds, x, GTLD);
+        }
+
+        if (specialCcTlds != null) {
+            for (String x : specialCcTlds) {
+                putTld(tlds, x, SPECIAL_CCTLD);
+                specials.add(toLower(x));
+            }
+        }
+
+        if (ccTlds != null) {
+            for (String x : ccTlds) {
+                if (!specials.contains(toLower(x)))
+                    putTld(tlds, x, CCTLD);
+            }
+        }
+
+        return build(tlds);
+    }
+
+    public static TldTable readFrom(Path file) throws IOException {
+        try (InputStream stream = Files.newInputStream(file)) {
+            return readFrom(stream);
+        }
+    }
+
+    public static TldTable readFrom(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+
+        if (in.readInt() != MAGIC)
+            throw new IOException("Not a TLD table");
+        int version = in.readInt();
+        if (version != FORMAT_VERSION)
+            throw new IOException("Unsupported TLD table version: " + version);
+
+        // 配列を確保する前に範囲を確かめる
+        int bucketCount = in.readInt();
+        int slotCount = in.readInt();
+        int keyLength = in.readInt();
+        if (!isValidCount(slotCount) || slotCount > MAX_SLOT_COUNT
+                || !isValidCount(bucketCount) || bucketCount > slotCount
+                || keyLength < 0 || keyLength >= MAX_KEY_LENGTH || keyLength > slotCount * 255)
+            throw new IOException("Broken TLD table");
+
+        long[] seeds = new long[bucketCount];
+        for (int i = 0; i < bucketCount; i++)
+            seeds[i] = in.readLong();
+
+        char[] keys = new char[keyLength];
+        for (int i = 0; i < keyLength; i++)
+            keys[i] = in.readChar();
+
+        int[] slots = new int[slotCount];
+        int shortestLength = Integer.MAX_VALUE;
+        int longestLength = 0;
+        int offset = 0;
+        for (int i = 0; i < slotCount; i++) {
+            int len = in.readUnsignedByte();
+            int type = in.readByte();
+            if (len > 0 && type != GTLD && type != CCTLD && type != SPECIAL_CCTLD)
+                throw new IOException("Broken TLD table");
+
+            slots[i] = slotValue(offset, len > 0 ? type : GTLD, len);
+            offset += len;
+            if (offset > keyLength)
+                throw new IOException("Broken TLD table");
+
+            if (len > 0) {
+                shortestLength = Math.min(shortestLength, len);
+                longestLength = Math.max(longestLength, len);
+            }
+        }
+        if (offset != keyLength)
+            throw new IOException("Broken TLD table");
+
+        return new TldTable(seeds, keys, slots, shortestLength, longestLength);
+    }
+
+    // readFrom で読み込める形式で書き出す。 stream は閉じない
+    public void writeTo(OutputStream stream) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(this.seeds.length);
+        out.writeInt(this.slots.length);
+        out.writeInt(this.keys.length);
+
+        for (long x : this.seeds)
+            out.writeLong(x);
+
+        for (char x : this.keys)
+            out.writeChar(x);
+
+        // 位置の代わりに長さを 1 バイトで持つ
+        for (int x : this.slots) {
+            out.writeByte(x & LENGTH_MASK);
+            out.writeByte((x >>> TYPE_SHIFT) & 3);
+        }
+
+        out.flush();
+    }
+
+    // 登録されている TLD の数
+    public int size() {
+        int count = 0;
+        for (int x : this.slots) {
+            if ((x & LENGTH_MASK) != 0) count++;
+        }
+        return count;
+    }
+
+    int getShortestLength() {
+        return this.shortestLength;
+    }
+
+    int getLongestLength() {
+        return this.longestLength;
+    }
+
+    // text[start, end) が TLD なら種類 (GTLD, CCTLD, SPECIAL_CCTLD) 、そうでなければ NOT_FOUND 。大文字と小文字は区別しない
+    public int getType(char[] text, int start, int end) {
+        if (start < 0 || start > end || end > text.length)
+            throw new IndexOutOfBoundsException("start: " + start + ", end: " + end + ", length: " + text.length);
+
+        int hash1 = 5381;
+        int hash2 = hash1;
+        for (int i = start; i < end; ) {
+            hash1 = ((hash1 << 5) + hash1) ^ toLower(text[i++]);
+            if (i >= end) break;
+            hash2 = ((hash2 << 5) + hash2) ^ toLower(text[i++]);
+        }
+        return this.get(text, start, end - start, hash1, hash2);
+    }
+
+    // text[start, start + len) が TLD なら種類を返す。 hash1, hash2 は Extractor と同じ方法で計算したもの。
+    int get(char[] text, int start, int len, int hash1, int hash2) {
+        long hash = mix(hash1, hash2);
+        int entry = this.slots[slotOf(hash, this.seeds[bucketOf(hash, this.bucketShift)], this.slotShift)];
+        if ((entry & LENGTH_MASK) != len) return NOT_FOUND;
+
+        char[] keys = this.keys;
+        int keyOffset = entry >>> OFFSET_SHIFT;
+        for (int i = 0; i < len; i++) {
+            if (toLower(text[start + i]) != keys[keyOffset + i]) return NOT_FOUND;
+        }
+
+        return (entry >>> TYPE_SHIFT) & 3;
+    }
+
+    static int toLower(char c) {
+        return c <= 'Z' && c >= 'A' ? (c + 32) : c;
+    }
+
+    private static String toLower(String s) {
+        char[] chars = s.toCharArray();
+        for (int i = 0; i < chars.length; i++)
+            chars[i] = (char) toLower(chars[i]);
+        return new String(chars);
+    }
+
+    // Extractor がテキストを読みながら計算するハッシュ値と同じもの
+    private static long hashOf(String key) {
+        int hash1 = 5381;
+        int hash2 = hash1;
+        int len = key.length();
+
+        for (int i = 0; i < len; ) {
+            hash1 = ((hash1 << 5) + hash1) ^ key.charAt(i++);
+            if (i >= len) break;
+            hash2 = ((hash2 << 5) + hash2) ^ key.charAt(i++);
+        }
+
+        return mix(hash1, hash2);
+    }
+
+    private static long mix(int hash1, int hash2) {
+        return (((long) hash1 << 32) | (hash2 & 0xffffffffL)) * MULTIPLIER1;
+    }
+
+    // 上位ビットを使う
+    private static int bucketOf(long hash, int bucketShift) {
+        return (int) (hash >>> bucketShift);
+    }
+
+    private static int slotOf(long hash, long seed, int slotShift) {
+        return (int) (((hash ^ seed) * MULTIPLIER2) >>> slotShift);
+    }
+
+    private static long seedValue(int seed) {
+        return seed * MULTIPLIER1;
+    }
+
+    private static int slotValue(int offset, int type, int len) {
+        return offset << OFFSET_SHIFT | type << TYPE_SHIFT | len;
+    }
+
+    private static boolean isValidCount(int x) {
+        return x >= 2 && Integer.bitCount(x) == 1;
+    }
+
+    // シフト量が 64 にならないように 2 以上にする
+    private static int powerOfTwo(int x) {
+        return x <= 2 ? 2 : Integer.highestOneBit(x - 1) << 1;
+    }
+
+    private static void putTld(Map<String, Integer> tlds, String tld, int type) {
+        if (tld == null || tld.isEmpty()) return;
+        // 書き出すときに長さを 1 バイトで表す
+        if (tld.length() > 255)
+            throw new IllegalArgumentException("Too long TLD: " + tld);
+        String key = toLower(tld);
+        tlds.remove(key);
+        tlds.put(key, type);
+    }
+
+    private static TldTable build(Map<String, Integer> tlds) {
+        int n = tlds.size();
+        if (n == 0) {
+            // 何にも一致しない表
+            return new TldTable(new long[2], new char[0], new int[2], Integer.MAX_VALUE, 0);
+        }
+
+        String[] keys = tlds.keySet().toArray(new String[n]);
+        long[] hashes = new long[n];
+        int shortestLength = Integer.MAX_VALUE;
+        int longestLength = 0;
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hashOf(keys[i]);
+            shortestLength = Math.min(shortestLength, keys[i].length());
+            longestLength = Math.max(longestLength, keys[i].length());
+        }
+
+        // キーをバケットに分け、大きいバケットから順にすべてのキーが空きスロットに入る seed を探す
+        int bucketCount = powerOfTwo((n + BUCKET_SIZE - 1) / BUCKET_SIZE);
+        int bucketShift = 64 - Integer.numberOfTrailingZeros(bucketCount);
+        // 埋まり具合が 1/2 から 3/4 程度になるように
+        int slotCount = powerOfTwo(n + n / 3);
+        if (slotCount > MAX_SLOT_COUNT)
+            throw new IllegalArgumentException("Too many TLDs");
+        int slotShift = 64 - Integer.numberOfTrailingZeros(slotCount);
+        final List<List<Integer>> buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++)
+            buckets.add(new ArrayList<Integer>());
+        for (int i = 0; i < n; i++)
+            buckets.get(bucketOf(hashes[i], bucketShift)).add(i);
+
+        Integer[] order = new Integer[bucketCount];
+        for (int i = 0; i < bucketCount; i++) order[i] = i;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer x, Integer y) {
+                return buckets.get(y).size() - buckets.get(x).size();
+            }
+        });
+
+        long[] seeds = new long[bucketCount];
+        int[] slotToKey = new int[slotCount];
+        Arrays.fill(slotToKey, -1);
+        int[] slots = new int[BUCKET_SIZE * 8];
+
+        for (int bucketIndex : order) {
+            List<Integer> bucket = buckets.get(bucketIndex);
+            if (bucket.isEmpty()) break;
+            if (slots.length < bucket.size()) slots = new int[bucket.size()];
+
+            Seed:
+            for (int seed = 0; ; seed++) {
+                if (seed >= MAX_SEED)
+                    throw new IllegalArgumentException("Could not build the TLD table. Two TLDs may have the same hash value.");
+
+                for (int i = 0; i < bucket.size(); i++) {
+                    int slot = slotOf(hashes[bucket.get(i)], seedValue(seed), slotShift);
+                    if (slotToKey[slot] != -1) continue Seed;
+                    for (int j = 0; j < i; j++) {
+                        if (slots[j] == slot) continue Seed;
+                    }
+                    slots[i] = slot;
+                }
+
+                for (int i = 0; i < bucket.size(); i++)
+                    slotToKey[slots[i]] = bucket.get(i);
+                seeds[bucketIndex] = seedValue(seed);
+                break;
+            }
+        }
+
+        // スロット順にキーを詰める
+        int totalLength = 0;
+        for (String x : keys) totalLength += x.length();
+
+        if (totalLength >= MAX_KEY_LENGTH)
+            throw new IllegalArgumentException("Too many TLDs");
+
+        char[] keyChars = new char[totalLength];
+        int[] slotValues = new int[slotCount];
+        int offset = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (slotToKey[slot] == -1) continue;
+
+            String key = keys[slotToKey[slot]];
+            key.getChars(0, key.length(), keyChars, offset);
+            slotValues[slot] = slotValue(offset, tlds.get(key), key.length());
+            offset += key.length();
+        }
+
+        return new TldTable(seeds, keyChars, slotValues, shortestLength, longestLength);
+    }
+}
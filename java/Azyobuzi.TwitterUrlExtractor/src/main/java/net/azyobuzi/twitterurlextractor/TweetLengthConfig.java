@@ -0,0 +1,160 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 重み付きのツイートの長さの数え方 (twitter-text v3 の設定と同じもの)。
+ * 文字ごとの重みの合計を scale で割ったものが長さになり、 URL は transformedUrlLength 文字として数える。
+ */
+public final class TweetLengthConfig {
+    public static final class Range {
+        private final int start;
+        private final int end;
+        private final int weight;
+
+        // start 以上 end 以下のコードポイント
+        public Range(int start, int end, int weight) {
+            if (start < 0 || end < start || end > Character.MAX_CODE_POINT)
+                throw new IllegalArgumentException("Invalid range: " + start + "-" + end);
+            if (weight < 0)
+                throw new IllegalArgumentException("weight is negative");
+
+            this.start = start;
+            this.end = end;
+            this.weight = weight;
+        }
+
+        public int getStart() {
+            return this.start;
+        }
+
+        public int getEnd() {
+            return this.end;
+        }
+
+        public int getWeight() {
+            return this.weight;
+        }
+    }
+
+    // twitter-text v3 の既定値
+    public static final TweetLengthConfig V3 = new TweetLengthConfig(280, 100, 200, 23, true, Arrays.asList(
+            new Range(0, 4351, 100),
+            new Range(8192, 8205, 100),
+            new Range(8208, 8223, 100),
+            new Range(8242, 8247, 100)
+    ));
+
+    // この値未満のコードポイントは表を引く
+    private static final int MAX_TABLE_LENGTH = 0x10000;
+
+    private final int maxWeightedTweetLength;
+    private final int scale;
+    private final int defaultWeight;
+    private final int transformedUrlLength;
+    private final boolean emojiParsingEnabled;
+    private final Range[] ranges;
+    private final int[] weightTable;
+
+    public TweetLengthConfig(int maxWeightedTweetLength, int scale, int defaultWeight, int transformedUrlLength,
+                             boolean emojiParsingEnabled, List<Range> ranges) {
+        if (scale <= 0)
+            throw new IllegalArgumentException("scale must be positive");
+        if (defaultWeight < 0 || transformedUrlLength < 0)
+            throw new IllegalArgumentException("defaultWeight and transformedUrlLength must not be negative");
+
+        this.maxWeightedTweetLength = maxWeightedTweetLength;
+        this.scale = scale;
+        this.defaultWeight = defaultWeight;
+        this.transformedUrlLength = transformedUrlLength;
+        this.emojiParsingEnabled = emojiParsingEnabled;
+        this.ranges = ranges == null ? new Range[0] : ranges.toArray(new Range[ranges.size()]);
+
+        // 範囲が重なっていたら先にあるものを優先
+        int tableLength = 0;
+        for (Range x : this.ranges)
+            tableLength = Math.max(tableLength, Math.min(x.end + 1, MAX_TABLE_LENGTH));
+
+        int[] weightTable = new int[tableLength];
+        Arrays.fill(weightTable, defaultWeight);
+        for (int i = this.ranges.length - 1; i >= 0; i--) {
+            Range x = this.ranges[i];
+            if (x.start < tableLength)
+                Arrays.fill(weightTable, x.start, Math.min(x.end + 1, tableLength), x.weight);
+        }
+        this.weightTable = weightTable;
+    }
+
+    public int getMaxWeightedTweetLength() {
+        return this.maxWeightedTweetLength;
+    }
+
+    public int getScale() {
+        return this.scale;
+    }
+
+    public int getDefaultWeight() {
+        return this.defaultWeight;
+    }
+
+    public int getTransformedUrlLength() {
+        return this.transformedUrlLength;
+    }
+
+    public boolean isEmojiParsingEnabled() {
+        return this.emojiParsingEnabled;
+    }
+
+    public List<Range> getRanges() {
+        return Arrays.asList(this.ranges.clone());
+    }
+
+    int getWeight(int codePoint) {
+        int[] weightTable = this.weightTable;
+        if (codePoint < weightTable.length) return weightTable[codePoint];
+
+        for (Range x : this.ranges) {
+            if (codePoint >= x.start && codePoint <= x.end) return x.weight;
+        }
+        return this.defaultWeight;
+    }
+
+    // text[start, end) の重みの合計。絵文字は並びごとに defaultWeight で数える
+    int getWeight(char[] text, int start, int end) {
+        int weight = 0;
+
+        for (int i = start; i < end; ) {
+            char c = text[i];
+            if (this.emojiParsingEnabled && EmojiTable.canStart(c)) {
+                int emojiEnd = EmojiTable.match(text, i, end);
+                if (emojiEnd != -1) {
+                    weight += this.defaultWeight;
+                    i = emojiEnd;
+                    continue;
+                }
+            }
+
+            if (!Character.isHighSurrogate(c)) {
+                weight += this.getWeight(c);
+                i++;
+                continue;
+            }
+
+            int cp = codePointAt(text, i, end);
+            weight += this.getWeight(cp);
+            i += Character.charCount(cp);
+        }
+
+        return weight;
+    }
+
+    private static int codePointAt(char[] text, int index, int end) {
+        char c = text[index];
+        if (Character.isHighSurrogate(c) && index + 1 < end) {
+            char low = text[index + 1];
+            if (Character.isLowSurrogate(low)) return Character.toCodePoint(c, low);
+        }
+        return c;
+    }
+}
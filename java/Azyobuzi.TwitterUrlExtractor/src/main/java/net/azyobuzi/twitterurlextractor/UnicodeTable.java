@@ -0,0 +1,97 @@
+package net.azyobuzi.twitterurlextractor;
+
+import java.util.Arrays;
+
+// ASCII 以外の文字の種類を、コードポイントの上位ビットで引くブロック番号と、ブロック内の位置の 2 段の表で判定する。
+// 表はクラスの初期化時に下の flagsOf の規則から作り、同じ内容のブロックは共有する。
+// ASCII は Extractor の ASCII_TABLE で判定するので、ここでは 0 になる。
+final class UnicodeTable {
+    // ドメインに使える
+    static final int DOMAIN = 1;
+    // アクセント付きのラテン文字以外。スキームなしの URL のホストでは制限がある
+    static final int UNICODE_DOMAIN = 1 << 1;
+    static final int ACCENT = 1 << 2;
+    static final int CYRILLIC = 1 << 3;
+    // URL の前に置ける
+    static final int PRECEDING = 1 << 4;
+
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int BMP_BLOCK_COUNT = 0x10000 >> BLOCK_SHIFT;
+
+    private static final char[] INDEX = new char[(Character.MAX_CODE_POINT + 1) >> BLOCK_SHIFT];
+    private static final byte[] BLOCKS;
+
+    static {
+        byte[] blocks = new byte[BLOCK_SIZE * 16];
+        int blockCount = 0;
+        byte[] block = new byte[BLOCK_SIZE];
+
+        // 規則は BMP の範囲だけなので、追加面のブロックはすべて U+10000 からのものと同じ
+        for (int i = 0; i <= BMP_BLOCK_COUNT; i++) {
+            int cp = i << BLOCK_SHIFT;
+            for (int j = 0; j < BLOCK_SIZE; j++)
+                block[j] = (byte) flagsOf(cp + j);
+
+            int blockNumber = findBlock(blocks, blockCount, block);
+            if (blockNumber == -1) {
+                if ((blockCount + 1) * BLOCK_SIZE > blocks.length)
+                    blocks = Arrays.copyOf(blocks, blocks.length * 2);
+                System.arraycopy(block, 0, blocks, blockCount * BLOCK_SIZE, BLOCK_SIZE);
+                blockNumber = blockCount++;
+            }
+            INDEX[i] = (char) blockNumber;
+        }
+        Arrays.fill(INDEX, BMP_BLOCK_COUNT + 1, INDEX.length, INDEX[BMP_BLOCK_COUNT]);
+
+        BLOCKS = Arrays.copyOf(blocks, blockCount * BLOCK_SIZE);
+    }
+
+    private UnicodeTable() {
+    }
+
+    static int get(char c) {
+        return BLOCKS[(INDEX[c >>> BLOCK_SHIFT] << BLOCK_SHIFT) | (c & BLOCK_MASK)];
+    }
+
+    static int get(int codePoint) {
+        return BLOCKS[(INDEX[codePoint >>> BLOCK_SHIFT] << BLOCK_SHIFT) | (codePoint & BLOCK_MASK)];
+    }
+
+    // 表を作るときの規則
+    private static int flagsOf(int cp) {
+        if (cp < 0x80) return 0;
+
+        boolean accent = (cp >= 0x00c0 && cp <= 0x00d6) || (cp >= 0x00d8 && cp <= 0x00f6) || (cp >= 0x00f8 && cp <= 0x024f)
+                || cp == 0x0253 || cp == 0x0254 || cp == 0x0256 || cp == 0x0257 || cp == 0x0259 || cp == 0x025b || cp == 0x0263 || cp == 0x0268 || cp == 0x026f || cp == 0x0272 || cp == 0x0289 || cp == 0x028b
+                || cp == 0x02bb
+                || (cp >= 0x0300 && cp <= 0x036f)
+                || (cp >= 0x1e00 && cp <= 0x1eff);
+        boolean cyrillic = (cp >= 0x0400 && cp <= 0x052F)
+                || (cp >= 0x2DE0 && cp <= 0x2DFF) || (cp >= 0xA640 && cp <= 0xA69F)
+                || cp == 0x1D2B || cp == 0x1D78 || cp == 0xFE2E || cp == 0xFE2F;
+        boolean domain = !((cp >= 0x2000 && cp <= 0x206F) || cp == 0x00A0 || cp == 0x1680 || cp == 0x3000);
+        boolean preceding = !(cp == 0xFF20 || (cp >= 0x202A && cp <= 0x202E));
+
+        int flags = 0;
+        if (domain) flags |= DOMAIN;
+        if (!accent) flags |= UNICODE_DOMAIN;
+        if (accent) flags |= ACCENT;
+        if (cyrillic) flags |= CYRILLIC;
+        if (preceding) flags |= PRECEDING;
+        return flags;
+    }
+
+    private static int findBlock(byte[] blocks, int blockCount, byte[] block) {
+        Blocks:
+        for (int i = 0; i < blockCount; i++) {
+            int offset = i * BLOCK_SIZE;
+            for (int j = 0; j < BLOCK_SIZE; j++) {
+                if (blocks[offset + j] != block[j]) continue Blocks;
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,70 @@
+package net.azyobuzi.twitterurlextractor;
+
+class Utf8Decoder {
+    private static final char REPLACEMENT_CHAR = '\uFFFD';
+
+    // src[off, end) を dst にデコードし、 UTF-16 のインデックスから off を基準にしたバイト位置への対応を byteIndexes に書き込む。
+    // byteIndexes[戻り値] には end - off が入る。
+    public static int decode(byte[] src, int off, int end, char[] dst, int[] byteIndexes) {
+        int i = off;
+        int n = 0;
+
+        while (i < end) {
+            int b = src[i];
+
+            // ASCII が続く限りはまとめて処理
+            if (b >= 0) {
+                do {
+                    byteIndexes[n] = i - off;
+                    dst[n++] = (char) b;
+                    if (++i >= end) break;
+                    b = src[i];
+                } while (b >= 0);
+                continue;
+            }
+
+            byteIndexes[n] = i - off;
+            b &= 0xff;
+
+            if (b >= 0xc2 && b <= 0xdf) {
+                if (i + 1 < end && isContinuation(src[i + 1])) {
+                    dst[n++] = (char) (((b & 0x1f) << 6) | (src[i + 1] & 0x3f));
+                    i += 2;
+                    continue;
+                }
+            } else if (b >= 0xe0 && b <= 0xef) {
+                if (i + 2 < end && isContinuation(src[i + 1]) && isContinuation(src[i + 2])) {
+                    int cp = ((b & 0x0f) << 12) | ((src[i + 1] & 0x3f) << 6) | (src[i + 2] & 0x3f);
+                    // 冗長な表現とサロゲートは不正
+                    if (cp >= 0x800 && !Character.isSurrogate((char) cp)) {
+                        dst[n++] = (char) cp;
+                        i += 3;
+                        continue;
+                    }
+                }
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                if (i + 3 < end && isContinuation(src[i + 1]) && isContinuation(src[i + 2]) && isContinuation(src[i + 3])) {
+                    int cp = ((b & 0x07) << 18) | ((src[i + 1] & 0x3f) << 12) | ((src[i + 2] & 0x3f) << 6) | (src[i + 3] & 0x3f);
+                    if (cp >= 0x10000 && cp <= 0x10ffff) {
+                        dst[n++] = Character.highSurrogate(cp);
+                        byteIndexes[n] = i - off;
+                        dst[n++] = Character.lowSurrogate(cp);
+                        i += 4;
+                        continue;
+                    }
+                }
+            }
+
+            // 不正なバイトは 1 バイトずつ U+FFFD にする
+            dst[n++] = REPLACEMENT_CHAR;
+            i++;
+        }
+
+        byteIndexes[n] = end - off;
+        return n;
+    }
+
+    private static boolean isContinuation(byte b) {
+        return (b & 0xc0) == 0x80;
+    }
+}
@@ -0,0 +1,206 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DomainCounterTest {
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+
+    private static List<String> format(List<DomainCounter.Entry> entries) {
+        List<String> result = new ArrayList<>();
+        for (DomainCounter.Entry x : entries)
+            result.add(x.getDomain() + " " + x.getCount() + " " + x.getError());
+        return result;
+    }
+
+    private void count(DomainCounter counter, String... texts) {
+        for (String text : texts)
+            this.extractor.countDomains(text, counter);
+    }
+
+    // 偏りのある乱数で選んだドメインを数え、実際の回数を返す
+    private Map<String, Long> countRandom(DomainCounter counter, long seed, int urlCount) {
+        Random random = new Random(seed);
+        Map<String, Long> actual = new HashMap<>();
+        for (int i = 0; i < urlCount; i++) {
+            String domain = "d" + (int) Math.pow(random.nextInt(1 << 12), 2.0 / 3) + ".com";
+            Long x = actual.get(domain);
+            actual.put(domain, x == null ? 1 : x + 1);
+            this.count(counter, "a " + domain + "/" + i + " b");
+        }
+        return actual;
+    }
+
+    private static void assertBounds(DomainCounter counter, Map<String, Long> actual) {
+        long total = 0;
+        for (long x : actual.values()) total += x;
+
+        for (DomainCounter.Entry x : counter.top(counter.getCapacity())) {
+            long count = actual.containsKey(x.getDomain()) ? actual.get(x.getDomain()) : 0;
+            assertTrue(x.getDomain(), x.getCount() - x.getError() <= count);
+            assertTrue(x.getDomain(), count <= x.getCount());
+        }
+
+        // 全体の 1 / capacity を超えるものは必ず残る
+        for (Map.Entry<String, Long> x : actual.entrySet()) {
+            if (x.getValue() * counter.getCapacity() > total)
+                assertTrue(x.getKey(), counter.getCount(x.getKey()) >= x.getValue());
+        }
+    }
+
+    @Test
+    public void domain() {
+        DomainCounter counter = new DomainCounter(16);
+        this.count(counter, "www.example.com a.b.example.com/x example.co.jp/a www.example.co.jp/b a.example.jp/c example.jp/d");
+        assertEquals(Arrays.asList("example.co.jp 2 0", "example.com 2 0", "example.jp 2 0"), format(counter.top(10)));
+
+        DomainCounter wholeHost = new DomainCounter(16, true);
+        this.count(wholeHost, "www.example.com a.b.example.com/x example.com");
+        assertEquals(Arrays.asList("a.b.example.com 1 0", "example.com 1 0", "www.example.com 1 0"), format(wholeHost.top(10)));
+    }
+
+    @Test
+    public void caseInsensitive() {
+        DomainCounter counter = new DomainCounter(16);
+        this.count(counter, "EXAMPLE.com Example.COM/a http://WWW.example.com", "www.Example.Com");
+        assertEquals(Arrays.asList("example.com 4 0"), format(counter.top(10)));
+        assertEquals(4, counter.getCount("example.com"));
+        assertEquals(4, counter.getCount("ExAmPlE.CoM"));
+        assertEquals(0, counter.getCount("example.net"));
+        assertEquals(4, counter.getTotal());
+    }
+
+    @Test
+    public void topOrder() {
+        DomainCounter counter = new DomainCounter(16);
+        this.count(counter, "b.com c.com a.com", "c.com c.com b.com", "d.com", "e.com e.com e.com e.com");
+        assertEquals(Arrays.asList("e.com 4 0", "c.com 3 0", "b.com 2 0", "a.com 1 0", "d.com 1 0"), format(counter.top(10)));
+        assertEquals(Arrays.asList("e.com 4 0", "c.com 3 0"), format(counter.top(2)));
+        assertEquals(0, counter.top(0).size());
+        assertEquals(5, counter.size());
+        assertEquals(11, counter.getTotal());
+
+        try {
+            counter.top(-1);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void eviction() {
+        DomainCounter counter = new DomainCounter(2);
+        this.count(counter, "a.com a.com b.com c.com");
+        // b.com を追い出して、その回数を誤差として引き継ぐ
+        assertEquals(Arrays.asList("a.com 2 0", "c.com 2 1"), format(counter.top(10)));
+        assertEquals(0, counter.getCount("b.com"));
+        assertEquals(2, counter.size());
+        assertEquals(4, counter.getTotal());
+
+        this.count(counter, "b.com");
+        assertEquals(Arrays.asList("b.com 3 2", "a.com 2 0"), format(counter.top(10)));
+    }
+
+    @Test
+    public void errorBounds() {
+        for (int capacity : new int[]{1, 4, 16, 64}) {
+            DomainCounter counter = new DomainCounter(capacity);
+            Map<String, Long> actual = this.countRandom(counter, capacity, 3000);
+            assertEquals(3000, counter.getTotal());
+            assertEquals(Math.min(capacity, actual.size()), counter.size());
+            assertBounds(counter, actual);
+
+            long sum = 0;
+            for (DomainCounter.Entry x : counter.top(capacity)) sum += x.getCount();
+            assertEquals(counter.getTotal(), sum);
+        }
+    }
+
+    @Test
+    public void merge() {
+        DomainCounter x = new DomainCounter(16);
+        DomainCounter y = new DomainCounter(16);
+        DomainCounter all = new DomainCounter(16);
+        String[] xTexts = {"a.com b.com", "A.com c.com"};
+        String[] yTexts = {"b.com d.com", "a.com"};
+        this.count(x, xTexts);
+        this.count(y, yTexts);
+        this.count(all, xTexts);
+        this.count(all, yTexts);
+
+        x.merge(y);
+        assertEquals(format(all.top(16)), format(x.top(16)));
+        assertEquals(all.getTotal(), x.getTotal());
+        // y は変更しない
+        assertEquals(Arrays.asList("a.com 1 0", "b.com 1 0", "d.com 1 0"), format(y.top(16)));
+
+        try {
+            x.merge(x);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    @Test
+    public void mergeEvictedDomain() {
+        DomainCounter x = new DomainCounter(4);
+        DomainCounter y = new DomainCounter(2);
+        this.count(x, "a.com a.com a.com a.com a.com");
+        this.count(y, "a.com b.com b.com b.com c.com c.com");
+        assertEquals(Arrays.asList("b.com 3 0", "c.com 3 1"), format(y.top(10)));
+
+        // y が追い出した a.com の 1 回は y の最小の回数 3 以下なので、回数と誤差に 3 を足す
+        x.merge(y);
+        assertEquals(Arrays.asList("a.com 8 3", "b.com 3 0", "c.com 3 1"), format(x.top(10)));
+        assertEquals(11, x.getTotal());
+    }
+
+    @Test
+    public void mergeAfterEviction() {
+        for (int capacity : new int[]{1, 4, 16}) {
+            DomainCounter x = new DomainCounter(capacity);
+            DomainCounter y = new DomainCounter(capacity);
+            Map<String, Long> actual = this.countRandom(x, capacity, 2000);
+            for (Map.Entry<String, Long> e : this.countRandom(y, capacity + 100, 1000).entrySet()) {
+                Long v = actual.get(e.getKey());
+                actual.put(e.getKey(), v == null ? e.getValue() : v + e.getValue());
+            }
+
+            x.merge(y);
+            assertEquals(3000, x.getTotal());
+            for (DomainCounter.Entry e : x.top(capacity)) {
+                long count = actual.containsKey(e.getDomain()) ? actual.get(e.getDomain()) : 0;
+                assertTrue(e.getDomain(), e.getCount() - e.getError() <= count);
+                assertTrue(e.getDomain(), count <= e.getCount());
+            }
+        }
+    }
+
+    @Test
+    public void clear() {
+        DomainCounter counter = new DomainCounter(2);
+        this.count(counter, "a.com b.com c.com");
+        counter.clear();
+        assertEquals(0, counter.size());
+        assertEquals(0, counter.getTotal());
+        assertEquals(0, counter.getCount("c.com"));
+
+        this.count(counter, "d.com");
+        assertEquals(Arrays.asList("d.com 1 0"), format(counter.top(10)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCapacity() {
+        new DomainCounter(0);
+    }
+}
@@ -0,0 +1,64 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class EntityBufferTest {
+    private static final int MAX = EntityBuffer.MAX_RETAINED_SCRATCH_LENGTH;
+
+    @Test
+    public void scratchIsReused() {
+        EntityBuffer buffer = new EntityBuffer();
+        char[] chars = buffer.chars(100);
+        assertSame(chars, buffer.chars(200));
+        assertSame(chars, buffer.chars(10));
+    }
+
+    @Test
+    public void oversizeScratchIsKept() {
+        // 呼び出し元が使い回す EntityBuffer では、上限を超えても小さくしない
+        EntityBuffer buffer = new EntityBuffer();
+        char[] chars = buffer.chars(MAX * 2);
+        byte[] bytes = buffer.bytes(MAX * 2);
+        int[] byteIndexes = buffer.byteIndexes(MAX * 2);
+        assertSame(chars, buffer.chars(10));
+        assertSame(bytes, buffer.bytes(10));
+        assertSame(byteIndexes, buffer.byteIndexes(10));
+        assertSame(chars, buffer.chars(MAX * 2));
+    }
+
+    @Test
+    public void releaseScratch() {
+        EntityBuffer buffer = new EntityBuffer();
+        char[] chars = buffer.chars(MAX + 1);
+        byte[] bytes = buffer.bytes(MAX + 1);
+        int[] byteIndexes = buffer.byteIndexes(MAX + 1);
+        buffer.releaseScratch();
+        assertNotSame(chars, buffer.chars(MAX + 1));
+        assertNotSame(bytes, buffer.bytes(MAX + 1));
+        assertNotSame(byteIndexes, buffer.byteIndexes(MAX + 1));
+
+        // 上限以下のものは捨てない
+        buffer.releaseScratch();
+        char[] small = buffer.chars(10);
+        buffer.releaseScratch();
+        assertSame(small, buffer.chars(10));
+    }
+
+    @Test
+    public void oversizeInput() {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        char[] padding = new char[MAX * 2];
+        Arrays.fill(padding, 'あ');
+        String text = new String(padding) + " example.com";
+
+        assertEquals(1, extractor.extract(text).size());
+        assertEquals(MAX * 4 + 1 + 23, extractor.getWeightedTweetLength(text, TweetLengthConfig.V3));
+        assertEquals(1, extractor.extract("example.com").size());
+    }
+}
@@ -0,0 +1,111 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+// 期待値は twitter-text 1.13.3 と 3.1.0 の Extractor.extractEntitiesWithIndices で、どちらも同じ
+public class EntityExtractionTest {
+    private static final int U = EntityInfo.URL;
+    private static final int H = EntityInfo.HASHTAG;
+    private static final int M = EntityInfo.MENTION;
+    private static final int C = EntityInfo.CASHTAG;
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+    private final EntityBuffer buffer = new EntityBuffer();
+
+    // type, startIndex, endIndex の組
+    private void assertEntities(String text, int... expected) {
+        int count = this.extractor.extractEntities(text, this.buffer);
+        int[] actual = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            actual[i * 3] = this.buffer.getType(i);
+            actual[i * 3 + 1] = this.buffer.getStartIndex(i);
+            actual[i * 3 + 2] = this.buffer.getStartIndex(i) + this.buffer.getLength(i);
+        }
+        assertEquals(text, Arrays.toString(expected), Arrays.toString(actual));
+    }
+
+    // 期待値は 3.1.0 の modifyIndicesFromUTF16ToUnicode でコードポイント単位に直したもの
+    private void assertCodePointIndexes(String text, int... expected) {
+        int count = this.extractor.extractEntitiesWithCodePointIndexes(text, this.buffer);
+        int[] actual = new int[count * 3];
+        for (int i = 0; i < count; i++) {
+            actual[i * 3] = this.buffer.getType(i);
+            actual[i * 3 + 1] = this.buffer.getCodePointStartIndex(i);
+            actual[i * 3 + 2] = this.buffer.getCodePointStartIndex(i) + this.buffer.getCodePointLength(i);
+        }
+        assertEquals(text, Arrays.toString(expected), Arrays.toString(actual));
+
+        char[] chars = text.toCharArray();
+        assertEquals(text, count, this.extractor.extractEntitiesWithCodePointIndexes(chars, 0, chars.length, this.buffer));
+        for (int i = 0; i < count; i++)
+            assertEquals(text, expected[i * 3 + 1], this.buffer.getCodePointStartIndex(i));
+    }
+
+    @Test
+    public void hashtag() {
+        this.assertEntities("#hashtag", H, 0, 8);
+        this.assertEntities("#ハッシュタグ", H, 0, 7);
+        this.assertEntities("#日本語 と #english", H, 0, 4, H, 7, 15);
+        this.assertEntities("#a123", H, 0, 5);
+        this.assertEntities("#_underscore", H, 0, 12);
+        this.assertEntities("#tag!", H, 0, 4);
+        this.assertEntities("#tag.com", H, 0, 4);
+        this.assertEntities("#tag_with_ünïcödé", H, 0, 17);
+        this.assertEntities("＃fullwidth", H, 0, 10);
+        this.assertEntities("(#paren)", H, 1, 7);
+        this.assertEntities("#tag😀", H, 0, 4);
+
+        this.assertEntities("text#nohash");
+        this.assertEntities("#123");
+        this.assertEntities("#tag#tag2");
+        this.assertEntities("#😀emoji");
+    }
+
+    @Test
+    public void mention() {
+        this.assertEntities("@mention", M, 0, 8);
+        this.assertEntities("@mention's", M, 0, 8);
+        this.assertEntities("@user/list-name", M, 0, 15);
+        this.assertEntities("@user_name123", M, 0, 13);
+        this.assertEntities("@@double", M, 1, 8);
+        this.assertEntities("＠fullwidth", M, 0, 10);
+        this.assertEntities("RT @user: hello", M, 3, 8);
+
+        // 20 文字まで
+        this.assertEntities("@a_very_long_username_that_exceeds", M, 0, 21);
+    }
+
+    @Test
+    public void cashtag() {
+        this.assertEntities("$TWTR", C, 0, 5);
+        this.assertEntities("$TWTR.A", C, 0, 7);
+        this.assertEntities("$twtr", C, 0, 5);
+
+        this.assertEntities("$TWTR1");
+        this.assertEntities("$1234");
+        this.assertEntities("price $5");
+        this.assertEntities("$ABCDEFG");
+    }
+
+    @Test
+    public void mixed() {
+        this.assertEntities("#tag @user $TICK http://example.com", H, 0, 4, M, 5, 10, C, 11, 16, U, 17, 35);
+        this.assertEntities("@user http://example.com #tag", M, 0, 5, U, 6, 24, H, 25, 29);
+
+        // URL の中の # と @ は URL の一部
+        this.assertEntities("http://example.com/#anchor", U, 0, 26);
+        this.assertEntities("http://example.com/@user", U, 0, 24);
+    }
+
+    @Test
+    public void codePointIndexes() {
+        this.assertCodePointIndexes("no surrogates #tag", H, 14, 18);
+        this.assertCodePointIndexes("😀 #tag 😀 http://example.com @user", H, 2, 6, U, 9, 27, M, 28, 33);
+        this.assertCodePointIndexes("𠮷野家 #𠮷 $TWTR", H, 4, 6, C, 7, 12);
+        this.assertCodePointIndexes("🇯🇵🇯🇵 example.com/😀 #タグ", U, 5, 17, H, 19, 22);
+    }
+}
@@ -0,0 +1,49 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExtractionCacheTest {
+    @Test
+    public void hit() {
+        Extractor extractor = new Extractor(Arrays.asList("com", "net"), Arrays.asList("jp"));
+        ExtractionCache cache = new ExtractionCache(extractor, 1 << 20);
+        EntityBuffer buffer = new EntityBuffer();
+
+        String text = "example.com と example.net";
+        assertEquals(2, cache.extract(text, buffer));
+        assertEquals(2, cache.extract(new String(text), buffer));
+        assertEquals(14, buffer.getStartIndex(1));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.size());
+
+        // . を含まなければキャッシュを通さない
+        assertEquals(0, cache.extract("example", buffer));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void swapTldTable() {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        ExtractionCache cache = new ExtractionCache(extractor, 1 << 20);
+        EntityBuffer buffer = new EntityBuffer();
+
+        String text = "example.com example.net";
+        assertEquals(1, cache.extract(text, buffer));
+
+        extractor.setTldTable(TldTable.create(Arrays.asList("com", "net"), Arrays.asList("jp")));
+        assertEquals(2, cache.extract(text, buffer));
+        assertEquals(2, cache.extract(text, buffer));
+        assertEquals(1, cache.getHitCount());
+
+        // 同じ表に戻しても、前の版の結果は使わない
+        TldTable table = extractor.getTldTable();
+        extractor.setTldTable(TldTable.create(Arrays.asList("com"), Arrays.asList("jp")));
+        assertEquals(1, cache.extract(text, buffer));
+        extractor.setTldTable(table);
+        assertEquals(2, cache.extract(text, buffer));
+    }
+}
@@ -0,0 +1,56 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class ExtractorMetricsTest {
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net"), Arrays.asList("jp"));
+
+    @Test
+    public void count() {
+        ExtractorMetrics metrics = new ExtractorMetrics();
+        this.extractor.setMetrics(metrics);
+        this.extractor.extract("example.com と http://example.jp/path");
+
+        assertEquals(1, metrics.get(ExtractorMetrics.SCANS));
+        assertEquals(2, metrics.get(ExtractorMetrics.ENTITIES));
+        assertEquals(2, metrics.get(ExtractorMetrics.TLD_HITS));
+
+        metrics.reset();
+        assertEquals(0, metrics.get(ExtractorMetrics.SCANS));
+    }
+
+    @Test
+    public void retiredThreads() throws InterruptedException {
+        final ExtractorMetrics metrics = new ExtractorMetrics(true);
+        this.extractor.setMetrics(metrics);
+
+        // 終了したスレッドの記録は合計に残り、スレッドごとの記録は残らない
+        for (int i = 0; i < 100; i++) {
+            Thread thread = new Thread() {
+                @Override
+                public void run() {
+                    ExtractorMetricsTest.this.extractor.extract("example.com");
+                }
+            };
+            thread.start();
+            thread.join();
+        }
+
+        assertEquals(0, metrics.recorderCount());
+        assertEquals(100, metrics.get(ExtractorMetrics.SCANS));
+        assertEquals(100, metrics.get(ExtractorMetrics.ENTITIES));
+
+        long scans = 0;
+        for (long x : metrics.getHistogram(ExtractorMetrics.PHASE_SCAN))
+            scans += x;
+        assertEquals(100, scans);
+
+        this.extractor.extract("example.com");
+        assertEquals(1, metrics.recorderCount());
+        assertEquals(101, metrics.get(ExtractorMetrics.SCANS));
+    }
+}
@@ -0,0 +1,140 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ExtractorTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us", "co", "tv"));
+
+    private void assertUrl(String text, int startIndex, int endIndex) {
+        List<EntityInfo> urls = this.extractor.extract(text);
+        assertEquals(text, 1, urls.size());
+        assertEquals(text, startIndex, urls.get(0).getStartIndex());
+        assertEquals(text, endIndex - startIndex, urls.get(0).getLength());
+    }
+
+    // 期待値は twitter-text 1.13.3 。 / の直後の文字を読み飛ばしていたので、末尾を越えたり、空白の先まで含めたりしていた
+    @Test
+    public void trailingSlash() {
+        this.assertUrl("a.com/ b", 0, 6);
+        this.assertUrl("example.com/", 0, 12);
+        this.assertUrl("example.co.jp/", 0, 14);
+        this.assertUrl("example.jp/", 0, 11);
+        this.assertUrl("see example.com/ and more", 4, 16);
+        this.assertUrl("http://example.com/ next", 0, 19);
+        this.assertUrl("example.com/a b", 0, 13);
+        this.assertUrl("example.co.jp/a", 0, 15);
+    }
+
+    @Test
+    public void tcoWithoutPath() {
+        this.assertUrl("t.co/", 0, 5);
+        this.assertUrl("https://t.co/ x", 0, 13);
+    }
+
+    private static String urls(Extractor extractor, String text) {
+        StringBuilder sb = new StringBuilder();
+        for (EntityInfo x : extractor.extract(text)) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(text, x.getStartIndex(), x.getStartIndex() + x.getLength());
+        }
+        return sb.toString();
+    }
+
+    private static final String TLD_TEXT = "example.com example.org example.jp/a example.us/a";
+
+    @Test
+    public void setTldTable() {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        assertEquals("example.com example.jp/a", urls(extractor, TLD_TEXT));
+
+        // org と us は新しい表にだけ、 com と jp は古い表にだけある
+        TldTable table = TldTable.create(Arrays.asList("org"), Arrays.asList("us"));
+        int version = extractor.getTldTableVersion();
+        extractor.setTldTable(table);
+        assertSame(table, extractor.getTldTable());
+        assertEquals(version + 2, extractor.getTldTableVersion());
+        assertEquals("example.org example.us/a", urls(extractor, TLD_TEXT));
+
+        try {
+            extractor.setTldTable(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertSame(table, extractor.getTldTable());
+    }
+
+    private Path writeTldTable(TldTable table) throws IOException {
+        Path file = this.folder.newFile().toPath();
+        try (OutputStream out = Files.newOutputStream(file)) {
+            table.writeTo(out);
+        }
+        return file;
+    }
+
+    @Test
+    public void loadTldTable() throws IOException {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        extractor.loadTldTable(this.writeTldTable(TldTable.create(Arrays.asList("org"), Arrays.asList("us"))));
+        assertEquals("example.org example.us/a", urls(extractor, TLD_TEXT));
+    }
+
+    @Test
+    public void loadCorruptTldTable() throws IOException {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        TldTable table = extractor.getTldTable();
+        byte[] bytes = Files.readAllBytes(this.writeTldTable(TldTable.create(Arrays.asList("org", "net"), Arrays.asList("us"))));
+
+        // 途中で終わっている
+        this.assertCorrupt(extractor, Arrays.copyOf(bytes, bytes.length - 1), null);
+
+        byte[] magic = bytes.clone();
+        magic[0] ^= 1;
+        this.assertCorrupt(extractor, magic, "Not a TLD table");
+
+        byte[] version = bytes.clone();
+        version[7] = 2;
+        this.assertCorrupt(extractor, version, "Unsupported TLD table version: 2");
+
+        // keyLength が実際より 1 短い
+        byte[] keyLength = bytes.clone();
+        keyLength[19]--;
+        this.assertCorrupt(extractor, keyLength, "Broken TLD table");
+
+        // 最後のスロットの種類が不正
+        byte[] type = bytes.clone();
+        type[type.length - 2] = 1;
+        type[type.length - 1] = 3;
+        this.assertCorrupt(extractor, type, "Broken TLD table");
+
+        // 失敗したら差し替えない
+        assertSame(table, extractor.getTldTable());
+        assertEquals("example.com example.jp/a", urls(extractor, TLD_TEXT));
+    }
+
+    private void assertCorrupt(Extractor extractor, byte[] bytes, String message) throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, bytes);
+        try {
+            extractor.loadTldTable(file);
+            fail(message);
+        } catch (IOException e) {
+            if (message != null) assertEquals(message, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+// 期待値は java.net.IDN.toASCII(host, IDN.ALLOW_UNASSIGNED) を小文字にしたもの
+public class IdnConverterTest {
+    private final IdnConverter converter = new IdnConverter(16);
+
+    @Test
+    public void ascii() {
+        assertEquals("example.com", this.converter.toAscii("example.com"));
+        assertEquals("example.com", this.converter.toAscii("Example.COM"));
+        assertEquals("xn--abc.com", this.converter.toAscii("xn--abc.com"));
+    }
+
+    @Test
+    public void punycode() {
+        assertEquals("xn--wgv71a119e.jp", this.converter.toAscii("日本語.jp"));
+        assertEquals("xn--mnchen-3ya.de", this.converter.toAscii("MÜNCHEN.de"));
+        assertEquals("xn--bcher-kva.de", this.converter.toAscii("bücher.de"));
+        assertEquals("xn--e28h.ws", this.converter.toAscii("😀.ws"));
+        assertEquals("xn--eckwd4c7cu47r2wf.jp", this.converter.toAscii("ドメイン名例.jp"));
+    }
+
+    @Test
+    public void normalize() {
+        assertEquals("abc.com", this.converter.toAscii("ＡＢＣ.com"));
+        assertEquals("www.a.b.c.jp", this.converter.toAscii("www.ａ。ｂ．ｃ｡jp"));
+        // NFKC で大文字になるものも小文字にする
+        assertEquals("xn--hello-fsa.com", this.converter.toAscii("ℌelloé.com"));
+    }
+
+    @Test
+    public void cached() {
+        String first = this.converter.toAscii("日本語.jp");
+        assertEquals(first, this.converter.toAscii("日本語.jp"));
+        assertEquals(1, this.converter.size());
+    }
+
+    @Test
+    public void labelTooLong() {
+        char[] label = new char[63];
+        Arrays.fill(label, 'a');
+        String host = new String(label);
+
+        assertEquals(host + ".com", this.converter.toAscii(host + ".com"));
+        assertNull(this.converter.toAscii(host + "a.com"));
+        assertNull(this.converter.toAscii("www." + host + "a"));
+        assertNull(this.converter.toAscii(host + "é.com"));
+    }
+}
@@ -0,0 +1,162 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class LinkifierTest {
+    private static final String[] TEXTS = {
+            "",
+            "a<b>&\"c' d",
+            "<example.com>",
+            "see https://example.com/a?b=1&c=\"2\" and @user #tag $TWTR",
+            "\"@user\" 'x' #タグ",
+            "日本語 😀 http://example.com/abcdefghijklmnopqrstuvwxyz 😀",
+            "\uD83D a \uDE00 example.com/\uD83D",
+            "末尾が上位サロゲート \uD83D",
+    };
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+
+    private String render(Linkifier linkifier, String text) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        linkifier.render(text, sb);
+        return sb.toString();
+    }
+
+    private String render(String text) throws IOException {
+        return this.render(new Linkifier(this.extractor), text);
+    }
+
+    @Test
+    public void escape() throws IOException {
+        assertEquals("a&lt;b&gt;&amp;&quot;c&#39; d", this.render("a<b>&\"c' d"));
+        assertEquals("&lt;<a href=\"http://example.com\">example.com</a>&gt;", this.render("<example.com>"));
+        assertEquals("<a href=\"http://example.com/\">example.com/</a>&lt;x&gt;", this.render("example.com/<x>"));
+        assertEquals("&quot;<a href=\"https://twitter.com/user\">@user</a>&quot; &#39;x&#39;", this.render("\"@user\" 'x'"));
+    }
+
+    @Test
+    public void escapeInTemplate() throws IOException {
+        // URL の & も、 Template が書いたものもエスケープされる
+        assertEquals("<a href=\"https://example.com/a?b=1&amp;c=2\">example.com/a?b=1&amp;c=2</a>",
+                this.render("https://example.com/a?b=1&c=2"));
+
+        Linkifier linkifier = new Linkifier(this.extractor, new Linkifier.Template() {
+            @Override
+            public void appendHref(char[] text, int start, int end, int type, Appendable out) throws IOException {
+                out.append("/r?u=").append(new String(text, start, end - start)).append("&t=\"").append((char) ('0' + type)).append('\'');
+            }
+
+            @Override
+            public void appendDisplayText(char[] text, int start, int end, int type, Appendable out) throws IOException {
+                out.append('<').append(new String(text, start, end - start), 0, end - start).append('>');
+            }
+        });
+        assertEquals("<a href=\"/r?u=example.com&amp;t=&quot;0&#39;\">&lt;example.com&gt;</a> &amp; "
+                        + "<a href=\"/r?u=#tag&amp;t=&quot;1&#39;\">&lt;#tag&gt;</a>",
+                this.render(linkifier, "example.com & #tag"));
+    }
+
+    @Test
+    public void entityTypes() throws IOException {
+        assertEquals("see <a href=\"https://example.com/a\">example.com/a</a>"
+                        + " and <a href=\"https://twitter.com/user\">@user</a>"
+                        + " <a href=\"https://twitter.com/hashtag/tag\">#tag</a>"
+                        + " <a href=\"https://twitter.com/search?q=%24TWTR\">$TWTR</a>"
+                        + " <a href=\"http://example.net\">example.net</a>",
+                this.render("see https://example.com/a and @user #tag $TWTR example.net"));
+        assertEquals("<a href=\"https://twitter.com/hashtag/タグ\">#タグ</a>", this.render("#タグ"));
+    }
+
+    @Test
+    public void truncateDisplayUrl() throws IOException {
+        Linkifier linkifier = new Linkifier(this.extractor, new Linkifier.DefaultTemplate(12));
+        assertEquals("<a href=\"http://example.com/abcdefghijklmnopqrstuvwxyz\">example.com/…</a>",
+                this.render(linkifier, "http://example.com/abcdefghijklmnopqrstuvwxyz"));
+        // スキームを除いた長さで比べる
+        assertEquals("<a href=\"https://example.com/\">example.com/</a>", this.render(linkifier, "https://example.com/"));
+        assertEquals("<a href=\"http://example.com/a\">example.com/…</a>", this.render(linkifier, "example.com/a"));
+        // URL 以外は切らない
+        assertEquals("<a href=\"https://twitter.com/hashtag/abcdefghijklmn\">#abcdefghijklmn</a>",
+                this.render(linkifier, "#abcdefghijklmn"));
+    }
+
+    @Test
+    public void truncateAtSurrogatePair() throws IOException {
+        char[] text = "example.com/a😀b".toCharArray();
+        String[] expected = {"example.com/a…", "example.com/a…", "example.com/a😀…", "example.com/a😀b"};
+        for (int i = 0; i < expected.length; i++) {
+            StringBuilder sb = new StringBuilder();
+            new Linkifier.DefaultTemplate(13 + i).appendDisplayText(text, 0, text.length, EntityInfo.URL, sb);
+            assertEquals(expected[i], sb.toString());
+        }
+    }
+
+    @Test
+    public void sameOutput() throws IOException {
+        for (int max : new int[]{Integer.MAX_VALUE, 5}) {
+            Linkifier linkifier = new Linkifier(this.extractor, new Linkifier.DefaultTemplate(max));
+            for (String text : TEXTS) {
+                String expected = this.render(linkifier, text);
+
+                // StringBuilder 以外の Appendable
+                StringBuffer sb = new StringBuffer();
+                linkifier.render(text, sb);
+                assertEquals(text, expected, sb.toString());
+
+                StringWriter writer = new StringWriter();
+                linkifier.render(text, writer);
+                assertEquals(text, expected, writer.toString());
+
+                // 対になっていないサロゲートは String#getBytes と同じく ? になる
+                byte[] expectedBytes = expected.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(expectedBytes.length + 6);
+                buffer.position(3);
+                linkifier.render(text, buffer);
+                assertEquals(text, 3 + expectedBytes.length, buffer.position());
+                assertArrayEquals(text, expectedBytes, Arrays.copyOfRange(buffer.array(), 3, buffer.position()));
+
+                ByteBuffer direct = ByteBuffer.allocateDirect(expectedBytes.length);
+                linkifier.render(text, direct);
+                byte[] directBytes = new byte[expectedBytes.length];
+                direct.flip();
+                direct.get(directBytes);
+                assertArrayEquals(text, expectedBytes, directBytes);
+            }
+        }
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void byteBufferOverflow() {
+        new Linkifier(this.extractor).render("example.com", ByteBuffer.allocate(10));
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new Linkifier(null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new Linkifier(this.extractor, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new Linkifier.DefaultTemplate(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
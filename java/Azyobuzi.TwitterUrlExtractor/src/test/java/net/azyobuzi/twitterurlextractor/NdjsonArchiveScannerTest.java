@@ -0,0 +1,185 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NdjsonArchiveScannerTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+
+    // "行の位置: URL の範囲" の形で集める。複数のスレッドから呼ばれるので同期する
+    private static class Collector implements NdjsonArchiveScanner.TweetHandler {
+        final List<String> tweets = new ArrayList<>();
+
+        @Override
+        public void onTweet(long lineOffset, EntityBuffer entities) {
+            String tweet = format(lineOffset, entities);
+            synchronized (this.tweets) {
+                this.tweets.add(tweet);
+            }
+        }
+
+        List<String> sorted() {
+            List<String> result = new ArrayList<>(this.tweets);
+            Collections.sort(result);
+            return result;
+        }
+    }
+
+    private static String format(long lineOffset, EntityBuffer entities) {
+        StringBuilder sb = new StringBuilder(String.format("%08d:", lineOffset));
+        for (int i = 0; i < entities.size(); i++) {
+            if (entities.getType(i) != EntityInfo.URL) continue;
+            sb.append(' ').append(entities.getStartIndex(i)).append('-')
+                    .append(entities.getStartIndex(i) + entities.getLength(i));
+        }
+        return sb.toString();
+    }
+
+    private String expected(long lineOffset, String text) {
+        EntityBuffer buffer = new EntityBuffer();
+        this.extractor.extract(text, buffer);
+        return format(lineOffset, buffer);
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = this.folder.newFile().toPath();
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private List<String> scan(NdjsonArchiveScanner scanner, Path file) throws IOException {
+        Collector collector = new Collector();
+        long count = scanner.scan(file, collector);
+        assertEquals(collector.tweets.size(), count);
+        return collector.sorted();
+    }
+
+    private List<String> scanParallel(NdjsonArchiveScanner scanner, Path file) throws IOException {
+        Collector collector = new Collector();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            long count = scanner.scan(file, pool, collector);
+            assertEquals(collector.tweets.size(), count);
+        } finally {
+            pool.shutdown();
+        }
+        return collector.sorted();
+    }
+
+    private List<String> scan(String content) throws IOException {
+        return this.scan(new NdjsonArchiveScanner(this.extractor), this.write(content));
+    }
+
+    @Test
+    public void escapes() throws IOException {
+        String line1 = "{\"text\":\"\\ud83d\\ude00\\u3042 example.com \\\"example.net\\\" http:\\/\\/example.org\\/a\\/b\"}\n";
+        String line2 = "{\"text\":\"\\ud83d example.com \\ude00 example.net\\n\\u00e9 example.org\"}\n";
+        List<String> tweets = this.scan(line1 + line2);
+
+        assertEquals(Arrays.asList(
+                this.expected(0, "😀あ example.com \"example.net\" http://example.org/a/b"),
+                this.expected(line1.getBytes(StandardCharsets.UTF_8).length,
+                        "� example.com � example.net\né example.org")
+        ), tweets);
+        assertEquals("00000000: 4-15 17-28 30-52", tweets.get(0));
+    }
+
+    @Test
+    public void crlf() throws IOException {
+        String line1 = "{\"id\":1,\"text\":\"a example.com\"}\r\n";
+        String line2 = "{\"id\":2 , \"text\" \r: \"b example.net\" }\r\n";
+        String line3 = "{\"text\":\"c example.org\"}";
+        List<String> tweets = this.scan(line1 + line2 + line3);
+
+        assertEquals(Arrays.asList(
+                this.expected(0, "a example.com"),
+                this.expected(line1.length(), "b example.net"),
+                this.expected(line1.length() + line2.length(), "c example.org")
+        ), tweets);
+    }
+
+    @Test
+    public void topLevelOnly() throws IOException {
+        String line1 = "{\"user\":{\"text\":\"example.com\"},\"entities\":[\"text\",{\"text\":\"example.net\"}],\"text\":\"a example.org\"}\n";
+        String line2 = "{\"user\":{\"text\":\"example.com\"},\"entities\":[\"text\",{\"text\":\"example.net\"}]}\n";
+        String line3 = "{\"note\":\"\\\"text\\\":\\\"example.com\\\"\",\"text\":\"b example.net\"}\n";
+        List<String> tweets = this.scan(line1 + line2 + line3);
+
+        assertEquals(Arrays.asList(
+                this.expected(0, "a example.org"),
+                this.expected(line1.length() + line2.length(), "b example.net")
+        ), tweets);
+    }
+
+    @Test
+    public void nonStringValue() throws IOException {
+        String content = "{\"text\":null,\"full_text\":\"example.com\"}\n"
+                + "{\"text\":123}\n"
+                + "{\"text\":[\"example.com\"]}\n"
+                + "{\"text\":\"example.com\n";
+        assertEquals(new ArrayList<String>(), this.scan(content));
+    }
+
+    @Test
+    public void fieldName() throws IOException {
+        Path file = this.write("{\"text\":\"a example.com\",\"full_text\":\"b example.net\"}\n");
+        assertEquals(Arrays.asList(this.expected(0, "b example.net")),
+                this.scan(new NdjsonArchiveScanner(this.extractor, "full_text"), file));
+    }
+
+    @Test
+    public void regionBoundary() throws IOException {
+        StringBuilder content = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String text = "tweet" + i + " example.com/" + i + " 😀 example.net";
+            expected.add(this.expected(content.toString().getBytes(StandardCharsets.UTF_8).length, text));
+            content.append("{\"id\":").append(i).append(",\"text\":\"").append(text).append("\"}\n");
+            if (i % 7 == 0) content.append('\n');
+        }
+        Path file = this.write(content.toString());
+
+        // 領域の境界が行の先頭、途中、改行の上に来るように大きさを変える
+        for (int regionSize = 1; regionSize <= 80; regionSize++) {
+            NdjsonArchiveScanner scanner = new NdjsonArchiveScanner(this.extractor, "text", regionSize, 80);
+            assertEquals("regionSize: " + regionSize, expected, this.scan(scanner, file));
+            assertEquals("regionSize: " + regionSize, expected, this.scanParallel(scanner, file));
+        }
+    }
+
+    @Test
+    public void tooLongLine() throws IOException {
+        Path file = this.write("{\"text\":\"example.com\"}\n{\"text\":\"" + new String(new char[100]).replace('\0', 'a') + "\"}\n{}\n");
+        NdjsonArchiveScanner scanner = new NdjsonArchiveScanner(this.extractor, "text", 16, 32);
+        try {
+            scanner.scan(file, new Collector());
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Too long line at 23"));
+        }
+        try {
+            this.scanParallel(scanner, file);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Too long line at 23"));
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class StreamingExtractorTest {
+    private static final String[] TEXTS = {
+            "日本語のテキスト https://example.com/path?q=1 と example.net、(www.example.org/a_(b)) 😀 example.jp/path\tt.co/abc\nhttp://例え.jp/ end",
+            "example.com から始まって a.b.example.org で終わる a.b.example.org",
+            "  先頭と末尾に空白  http://example.com/  ",
+            "URL のないテキスト。ドット. もある",
+            "@user のあとの example.com と #tag.com と $TWTR",
+    };
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+
+    private static class Collector implements StreamingExtractor.EntityHandler {
+        final List<Long> entities = new ArrayList<>();
+
+        @Override
+        public void onEntity(long startIndex, int length) {
+            this.entities.add(startIndex);
+            this.entities.add(startIndex + length);
+        }
+    }
+
+    // 1 回の read で最大 3 文字しか返さない
+    private static class PartialReader extends Reader {
+        private final Reader reader;
+        private final Random random = new Random(1);
+
+        PartialReader(String text) {
+            this.reader = new StringReader(text);
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return this.reader.read(cbuf, off, Math.min(len, this.random.nextInt(3) + 1));
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+    }
+
+    private List<Long> expected(String text) {
+        EntityBuffer buffer = new EntityBuffer();
+        int count = this.extractor.extract(text, buffer);
+        List<Long> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add((long) buffer.getStartIndex(i));
+            result.add((long) buffer.getStartIndex(i) + buffer.getLength(i));
+        }
+        return result;
+    }
+
+    private List<Long> stream(Reader reader, int chunkSize) throws IOException {
+        Collector collector = new Collector();
+        long count = new StreamingExtractor(this.extractor, chunkSize).extract(reader, collector);
+        assertEquals(collector.entities.size() / 2, count);
+        return collector.entities;
+    }
+
+    // ウィンドウ (チャンクサイズの 2 倍) に必ず空白が入る大きさなら、全体を一度に処理したときと同じになる
+    private static int minChunkSize(String text) {
+        int longestRun = 0;
+        int run = 0;
+        for (int i = 0; i < text.length(); i++) {
+            run = text.charAt(i) <= ' ' ? 0 : run + 1;
+            longestRun = Math.max(longestRun, run);
+        }
+        return longestRun / 2 + 1;
+    }
+
+    @Test
+    public void sameAsWholeText() throws IOException {
+        for (String text : TEXTS) {
+            List<Long> expected = this.expected(text);
+            for (int chunkSize = minChunkSize(text); chunkSize <= text.length() + 1; chunkSize++) {
+                String message = text + " (chunkSize: " + chunkSize + ")";
+                assertEquals(message, expected, this.stream(new StringReader(text), chunkSize));
+                assertEquals(message, expected, this.stream(new PartialReader(text), chunkSize));
+            }
+        }
+    }
+
+    @Test
+    public void channel() throws IOException {
+        for (String text : TEXTS) {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            Collector collector = new Collector();
+            new StreamingExtractor(this.extractor, minChunkSize(text))
+                    .extract(Channels.newChannel(new ByteArrayInputStream(bytes)), collector);
+            assertEquals(text, this.expected(text), collector.entities);
+        }
+    }
+
+    @Test
+    public void splitWithoutWhitespace() throws IOException {
+        // ウィンドウ全体に空白がなければその場で区切るので、またがる URL は分断される
+        String text = "ab.com/cdefghij";
+        assertEquals(Arrays.asList(0L, 15L), this.expected(text));
+        assertEquals(Arrays.asList(0L, 8L), this.stream(new StringReader(text), 4));
+        assertEquals(Arrays.asList(0L, 15L), this.stream(new StringReader(text), 8));
+    }
+
+    @Test
+    public void empty() throws IOException {
+        assertEquals(new ArrayList<Long>(), this.stream(new StringReader(""), 1));
+    }
+}
@@ -0,0 +1,213 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TcoCacheTest {
+    private static final String ALNUM = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    // 読み込んだコードを記録し、 "none" で始まるものは見つからないことにする
+    private static class CountingLoader implements TcoCache.Loader {
+        final List<String> loaded = new ArrayList<>();
+
+        @Override
+        public String load(String code) throws IOException {
+            this.loaded.add(code);
+            if (code.startsWith("none")) return null;
+            if (code.equals("error")) throw new IOException(code);
+            return "https://example.com/" + code;
+        }
+    }
+
+    @Test
+    public void idRoundTrip() {
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            char[] chars = new char[random.nextInt(10) + 1];
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = ALNUM.charAt(random.nextInt(ALNUM.length()));
+            String code = new String(chars);
+
+            long id = TcoCache.toId(code);
+            assertTrue(code, id > 0);
+            assertEquals(code, TcoCache.toCode(id));
+        }
+
+        // 先頭の 0 も区別する
+        assertEquals(1, TcoCache.toId("0"));
+        assertEquals(62, TcoCache.toId("z"));
+        assertEquals(63, TcoCache.toId("00"));
+        assertEquals("00", TcoCache.toCode(63));
+    }
+
+    @Test
+    public void maxLength() {
+        for (String code : new String[]{"zzzzzzzzzz", "0000000000", "ZZZZZZZZZZ", "a0B1c2D3e4"}) {
+            long id = TcoCache.toId(code);
+            assertTrue(code, id > 0);
+            assertEquals(code, TcoCache.toCode(id));
+        }
+        assertTrue(TcoCache.toId("zzzzzzzzzz") > TcoCache.toId("0000000000"));
+        assertEquals(TcoCache.NO_ID, TcoCache.toId("zzzzzzzzzzz"));
+        assertEquals(TcoCache.NO_ID, TcoCache.toId("00000000000"));
+    }
+
+    @Test
+    public void invalidCode() {
+        for (String code : new String[]{"", "ab-c", "a_b", "a b", "あ", "ａ", "abc/", "a.b"})
+            assertEquals(code, TcoCache.NO_ID, TcoCache.toId(code));
+
+        for (long id : new long[]{0, -1, TcoCache.NO_ID, Long.MIN_VALUE}) {
+            try {
+                TcoCache.toCode(id);
+                fail(String.valueOf(id));
+            } catch (IllegalArgumentException e) {
+            }
+        }
+    }
+
+    @Test
+    public void idFromExtractor() {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        EntityBuffer buffer = new EntityBuffer();
+        String text = "https://t.co/AbC123 http://T.CO/zzzzzzzzzz https://t.co/abcdefghijk t.co/abc https://example.com/abc";
+        assertEquals(5, extractor.extract(text, buffer));
+        assertEquals(TcoCache.toId("AbC123"), buffer.getTcoId(0));
+        assertEquals(TcoCache.toId("zzzzzzzzzz"), buffer.getTcoId(1));
+        // 11 文字以上、スキームなし、 t.co 以外は ID を持たない
+        assertEquals(TcoCache.NO_ID, buffer.getTcoId(2));
+        assertEquals(TcoCache.NO_ID, buffer.getTcoId(3));
+        assertEquals(TcoCache.NO_ID, buffer.getTcoId(4));
+    }
+
+    @Test
+    public void loadOnlyOnMiss() throws IOException {
+        CountingLoader loader = new CountingLoader();
+        TcoCache cache = new TcoCache(16, loader);
+        long id = TcoCache.toId("abc");
+
+        assertNull(cache.getIfPresent(id));
+        assertEquals("https://example.com/abc", cache.get(id));
+        assertEquals("https://example.com/abc", cache.get(id));
+        assertEquals("https://example.com/abc", cache.getIfPresent(id));
+        assertEquals(Arrays.asList("abc"), loader.loaded);
+
+        // put したものは読み込まない
+        cache.put(TcoCache.toId("def"), "https://example.net/");
+        assertEquals("https://example.net/", cache.get(TcoCache.toId("def")));
+        assertEquals(Arrays.asList("abc"), loader.loaded);
+
+        // 見つからなかったものは覚えない
+        long none = TcoCache.toId("none1");
+        assertNull(cache.get(none));
+        assertNull(cache.get(none));
+        assertNull(cache.getIfPresent(none));
+        assertEquals(Arrays.asList("abc", "none1", "none1"), loader.loaded);
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void loaderException() {
+        CountingLoader loader = new CountingLoader();
+        TcoCache cache = new TcoCache(16, loader);
+        try {
+            cache.get(TcoCache.toId("error"));
+            fail();
+        } catch (IOException e) {
+            assertEquals("error", e.getMessage());
+        }
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void getFromBuffer() throws IOException {
+        Extractor extractor = new Extractor(Arrays.asList("com"), Arrays.asList("jp"));
+        EntityBuffer buffer = new EntityBuffer();
+        CountingLoader loader = new CountingLoader();
+        TcoCache cache = new TcoCache(16, loader);
+
+        extractor.extract("https://t.co/xyz https://example.com/", buffer);
+        assertEquals("https://example.com/xyz", cache.get(buffer, 0));
+        assertNull(cache.get(buffer, 1));
+        assertEquals(Arrays.asList("xyz"), loader.loaded);
+    }
+
+    @Test
+    public void eviction() throws IOException {
+        // 16 未満なら 1 つのストライプに入る
+        CountingLoader loader = new CountingLoader();
+        TcoCache cache = new TcoCache(4, loader);
+        for (int i = 1; i <= 4; i++)
+            cache.put(i, "url" + i);
+        assertEquals(4, cache.size());
+
+        // 参照されたものは 1 度だけ追い出しを免れる
+        assertEquals("url1", cache.get(1));
+        cache.put(5, "url5");
+        assertEquals(4, cache.size());
+        assertNull(cache.getIfPresent(2));
+        for (long id : new long[]{1, 3, 4, 5})
+            assertEquals("url" + id, cache.getIfPresent(id));
+
+        // 既にあるものは置き換えるだけ
+        cache.put(5, "url5'");
+        assertEquals(4, cache.size());
+        assertEquals("url5'", cache.getIfPresent(5));
+        assertEquals(0, loader.loaded.size());
+    }
+
+    @Test
+    public void capacity() throws IOException {
+        for (int capacity : new int[]{1, 15, 16, 100, 1000, 5000}) {
+            TcoCache cache = new TcoCache(capacity, new CountingLoader());
+            for (long id = 1; id <= capacity * 3; id++) {
+                assertEquals(TcoCache.toCode(id), cache.get(id).substring("https://example.com/".length()));
+                assertTrue(cache.size() <= capacity);
+            }
+
+            // ストライプごとに容量を分けるので、どのストライプもいっぱいになれば全体でちょうど capacity になる
+            assertEquals(capacity, cache.size());
+
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertNull(cache.getIfPresent(capacity * 3));
+        }
+    }
+
+    @Test
+    public void invalidArguments() throws IOException {
+        TcoCache cache = new TcoCache(16, new CountingLoader());
+        try {
+            cache.get(0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            cache.put(1, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        assertNull(cache.getIfPresent(TcoCache.NO_ID));
+
+        try {
+            new TcoCache(0, new CountingLoader());
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+        try {
+            new TcoCache(16, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
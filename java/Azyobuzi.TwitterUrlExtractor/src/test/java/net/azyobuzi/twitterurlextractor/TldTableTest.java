@@ -0,0 +1,70 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class TldTableTest {
+    private final TldTable table = TldTable.create(Arrays.asList("com", "net", "みんな"), Arrays.asList("jp", "co", "tv"));
+
+    private static int getType(TldTable table, String tld) {
+        char[] text = tld.toCharArray();
+        return table.getType(text, 0, text.length);
+    }
+
+    @Test
+    public void lookup() {
+        assertEquals(TldTable.GTLD, getType(this.table, "com"));
+        assertEquals(TldTable.GTLD, getType(this.table, "COM"));
+        assertEquals(TldTable.GTLD, getType(this.table, "みんな"));
+        assertEquals(TldTable.CCTLD, getType(this.table, "jp"));
+        assertEquals(TldTable.SPECIAL_CCTLD, getType(this.table, "co"));
+        assertEquals(TldTable.NOT_FOUND, getType(this.table, "org"));
+        assertEquals(TldTable.NOT_FOUND, getType(this.table, "comm"));
+        assertEquals(TldTable.NOT_FOUND, getType(this.table, ""));
+        assertEquals(6, this.table.size());
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        this.table.writeTo(out);
+        TldTable read = TldTable.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        for (String x : new String[]{"com", "net", "みんな", "jp", "co", "tv", "org", "example"})
+            assertEquals(x, getType(this.table, x), getType(read, x));
+        assertEquals(this.table.size(), read.size());
+    }
+
+    @Test
+    public void brokenHeader() throws IOException {
+        // bucketCount, slotCount, keyLength
+        assertBroken(2, 1 << 30, 0);
+        assertBroken(4, 2, 0);
+        assertBroken(2, 2, 511);
+        assertBroken(2, 2, -1);
+        assertBroken(3, 4, 0);
+    }
+
+    private static void assertBroken(int bucketCount, int slotCount, int keyLength) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0x544c4454);
+        out.writeInt(1);
+        out.writeInt(bucketCount);
+        out.writeInt(slotCount);
+        out.writeInt(keyLength);
+        out.flush();
+
+        try {
+            TldTable.readFrom(new ByteArrayInputStream(bytes.toByteArray()));
+            fail("bucketCount: " + bucketCount + ", slotCount: " + slotCount + ", keyLength: " + keyLength);
+        } catch (IOException e) {
+            assertEquals("Broken TLD table", e.getMessage());
+        }
+    }
+}
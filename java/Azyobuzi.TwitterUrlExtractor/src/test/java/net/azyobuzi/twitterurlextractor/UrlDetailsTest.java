@@ -0,0 +1,120 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class UrlDetailsTest {
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+    private final EntityBuffer buffer = new EntityBuffer();
+
+    // その部分がなければ null
+    private static void assertSpan(String message, String text, String expected, int startIndex, int length) {
+        if (expected == null) {
+            assertEquals(message, -1, startIndex);
+            assertEquals(message, 0, length);
+        } else {
+            assertEquals(message, expected, text.substring(startIndex, startIndex + length));
+        }
+    }
+
+    private void assertDetails(String text, int index, String url, int schemeLength, String host, String tld, int tldType,
+                               String port, String path, String query) {
+        EntityBuffer b = this.buffer;
+        assertTrue(text, b.hasUrlDetails());
+        assertSpan(text, text, url, b.getStartIndex(index), b.getLength(index));
+        assertEquals(text, schemeLength, b.getSchemeLength(index));
+        assertSpan(text, text, host, b.getHostStartIndex(index), b.getHostLength(index));
+        assertSpan(text, text, tld, b.getTldStartIndex(index), b.getTldLength(index));
+        assertEquals(text, tldType, b.getTldType(index));
+        assertSpan(text, text, port, b.getPortStartIndex(index), b.getPortLength(index));
+        assertSpan(text, text, path, b.getPathStartIndex(index), b.getPathLength(index));
+        assertSpan(text, text, query, b.getQueryStartIndex(index), b.getQueryLength(index));
+
+        // スキームと URL の先頭は一致する
+        assertEquals(text, url.substring(0, schemeLength), text.substring(b.getStartIndex(index), b.getStartIndex(index) + schemeLength));
+    }
+
+    private void assertUrl(String text, String url, int schemeLength, String host, String tld, int tldType,
+                           String port, String path, String query) {
+        assertEquals(text, 1, this.extractor.extractWithDetails(text, this.buffer));
+        this.assertDetails(text, 0, url, schemeLength, host, tld, tldType, port, path, query);
+    }
+
+    @Test
+    public void full() {
+        this.assertUrl("see https://www.example.com:8080/a/b?q=1&r=2#frag end",
+                "https://www.example.com:8080/a/b?q=1&r=2#frag", 5, "www.example.com", "com", TldTable.GTLD, "8080", "/a/b", "q=1&r=2#frag");
+        this.assertUrl("http://EXAMPLE.com:80",
+                "http://EXAMPLE.com:80", 4, "EXAMPLE.com", "com", TldTable.GTLD, "80", null, null);
+    }
+
+    @Test
+    public void withoutScheme() {
+        this.assertUrl("example.com",
+                "example.com", 0, "example.com", "com", TldTable.GTLD, null, null, null);
+        this.assertUrl("example.co.jp/path",
+                "example.co.jp/path", 0, "example.co.jp", "jp", TldTable.CCTLD, null, "/path", null);
+        this.assertUrl("example.com/a?b/c?d",
+                "example.com/a?b/c?d", 0, "example.com", "com", TldTable.GTLD, null, "/a", "b/c?d");
+    }
+
+    @Test
+    public void pathWithParens() {
+        this.assertUrl("(www.example.org/a_(b))",
+                "www.example.org/a_(b)", 0, "www.example.org", "org", TldTable.GTLD, null, "/a_(b)", null);
+    }
+
+    @Test
+    public void emptyQuery() {
+        this.assertUrl("http://example.com?",
+                "http://example.com?", 4, "example.com", "com", TldTable.GTLD, null, null, "");
+        this.assertUrl("http://example.com/?",
+                "http://example.com/?", 4, "example.com", "com", TldTable.GTLD, null, "/", "");
+    }
+
+    @Test
+    public void emptyPort() {
+        // : の後ろに数字がなければ : の前で終わる
+        this.assertUrl("http://example.com:/a",
+                "http://example.com", 4, "example.com", "com", TldTable.GTLD, null, null, null);
+    }
+
+    @Test
+    public void tco() {
+        this.assertUrl("https://t.co/abc123",
+                "https://t.co/abc123", 5, "t.co", "co", TldTable.SPECIAL_CCTLD, null, "/abc123", null);
+        this.assertUrl("t.co/abc",
+                "t.co/abc", 0, "t.co", "co", TldTable.SPECIAL_CCTLD, null, "/abc", null);
+    }
+
+    @Test
+    public void multipleUrls() {
+        String text = "😀 http://example.com:80 と example.net/x?y と https://t.co/abc";
+        assertEquals(3, this.extractor.extractWithDetails(text, this.buffer));
+        this.assertDetails(text, 0, "http://example.com:80", 4, "example.com", "com", TldTable.GTLD, "80", null, null);
+        this.assertDetails(text, 1, "example.net/x?y", 0, "example.net", "net", TldTable.GTLD, null, "/x", "y");
+        this.assertDetails(text, 2, "https://t.co/abc", 5, "t.co", "co", TldTable.SPECIAL_CCTLD, null, "/abc", null);
+    }
+
+    @Test
+    public void charArray() {
+        // 位置は off からの相対位置
+        String text = "example.net/x?y";
+        char[] buf = ("xx " + text + " yy").toCharArray();
+        assertEquals(1, this.extractor.extractWithDetails(buf, 3, text.length(), this.buffer));
+        this.assertDetails(text, 0, text, 0, "example.net", "net", TldTable.GTLD, null, "/x", "y");
+    }
+
+    @Test
+    public void onlyWithDetails() {
+        this.extractor.extractWithDetails("example.com", this.buffer);
+        assertTrue(this.buffer.hasUrlDetails());
+        this.extractor.extract("example.com", this.buffer);
+        assertFalse(this.buffer.hasUrlDetails());
+    }
+}
@@ -0,0 +1,148 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+// containsUrl, countUrls, iterateUrls, extract(String, int) が extract(String) と一致するか
+public class UrlQueryTest {
+    private static final String[] TEXTS = {
+            "",
+            "ab",
+            "URL のないテキスト。ドット. もある",
+            "example.com",
+            "日本語 https://example.com/path?q=1 と example.net、(www.example.org/a_(b)) 😀 example.jp/path t.co/abc",
+            "example.com example.com example.com example.com",
+            "@user のあとの example.com と #tag.com と $TWTR http://example.org/",
+            "a.b.example.org.",
+            "example.jp と example.us だけ",
+    };
+
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us", "co", "tv"));
+
+    private static List<Integer> toList(List<EntityInfo> entities) {
+        List<Integer> result = new ArrayList<>();
+        for (EntityInfo x : entities) {
+            assertEquals(EntityInfo.URL, x.getType());
+            result.add(x.getStartIndex());
+            result.add(x.getLength());
+        }
+        return result;
+    }
+
+    @Test
+    public void containsUrl() {
+        for (String text : TEXTS) {
+            boolean expected = !this.extractor.extract(text).isEmpty();
+            assertEquals(text, expected, this.extractor.containsUrl(text));
+            assertEquals(text, expected, this.extractor.containsUrl(new StringBuilder(text)));
+            assertEquals(text, expected, this.extractor.containsUrl(CharBuffer.wrap(text)));
+        }
+        assertFalse(this.extractor.containsUrl(null));
+    }
+
+    @Test
+    public void countUrls() {
+        for (String text : TEXTS) {
+            int expected = this.extractor.extract(text).size();
+            assertEquals(text, expected, this.extractor.countUrls(text));
+            assertEquals(text, expected, this.extractor.countUrls(new StringBuilder(text)));
+            assertEquals(text, expected, this.extractor.countUrls(CharBuffer.wrap(text)));
+        }
+        assertEquals(0, this.extractor.countUrls(null));
+    }
+
+    @Test
+    public void iterateUrls() {
+        for (String text : TEXTS) {
+            List<EntityInfo> actual = new ArrayList<>();
+            Iterator<EntityInfo> iterator = this.extractor.iterateUrls(text);
+            while (iterator.hasNext()) {
+                // hasNext を何度呼んでも走査は進まない
+                assertEquals(text, true, iterator.hasNext());
+                actual.add(iterator.next());
+            }
+            assertEquals(text, toList(this.extractor.extract(text)), toList(actual));
+
+            assertFalse(text, iterator.hasNext());
+            try {
+                iterator.next();
+                fail(text);
+            } catch (NoSuchElementException e) {
+            }
+        }
+    }
+
+    @Test
+    public void iterateUrlsWithoutHasNext() {
+        String text = TEXTS[4];
+        List<EntityInfo> expected = this.extractor.extract(text);
+        Iterator<EntityInfo> iterator = this.extractor.iterateUrls(text);
+        List<EntityInfo> actual = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++)
+            actual.add(iterator.next());
+        assertEquals(toList(expected), toList(actual));
+
+        try {
+            iterator.next();
+            fail();
+        } catch (NoSuchElementException e) {
+        }
+    }
+
+    @Test
+    public void iterateUrlsCopiesText() {
+        StringBuilder sb = new StringBuilder("a example.com b example.net");
+        Iterator<EntityInfo> iterator = this.extractor.iterateUrls(sb);
+        sb.setLength(0);
+        sb.append("no urls");
+
+        assertEquals(toList(this.extractor.extract("a example.com b example.net")),
+                toList(Arrays.asList(iterator.next(), iterator.next())));
+        assertFalse(iterator.hasNext());
+        assertFalse(this.extractor.iterateUrls(null).hasNext());
+    }
+
+    @Test
+    public void iterateUrlsRemove() {
+        Iterator<EntityInfo> iterator = this.extractor.iterateUrls("example.com");
+        iterator.next();
+        try {
+            iterator.remove();
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+    }
+
+    @Test
+    public void maxEntities() {
+        for (String text : TEXTS) {
+            List<Integer> expected = toList(this.extractor.extract(text));
+            int count = expected.size() / 2;
+            for (int maxEntities = 0; maxEntities <= count + 1; maxEntities++) {
+                String message = text + " (maxEntities: " + maxEntities + ")";
+                int n = Math.min(count, maxEntities);
+                assertEquals(message, expected.subList(0, n * 2), toList(this.extractor.extract(text, maxEntities)));
+
+                EntityBuffer buffer = new EntityBuffer();
+                assertEquals(message, n, this.extractor.extract(text, maxEntities, buffer));
+                assertEquals(message, expected.subList(0, n * 2), toList(buffer.toList()));
+            }
+        }
+        assertEquals(0, this.extractor.extract(null, 1, new EntityBuffer()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeMaxEntities() {
+        this.extractor.extract("example.com", -1);
+    }
+}
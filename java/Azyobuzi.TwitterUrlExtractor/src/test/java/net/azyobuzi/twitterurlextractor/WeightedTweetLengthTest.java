@@ -0,0 +1,106 @@
+package net.azyobuzi.twitterurlextractor;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+// 期待値は twitter-text 3.1.0 の TwitterTextParser.parseTweet(text).weightedLength
+public class WeightedTweetLengthTest {
+    private final Extractor extractor = new Extractor(Arrays.asList("com", "net", "org"), Arrays.asList("jp", "us"));
+
+    private void assertWeightedLength(int expected, String text) {
+        assertEquals(text, expected, this.extractor.getWeightedTweetLength(text, TweetLengthConfig.V3));
+    }
+
+    @Test
+    public void plainText() {
+        this.assertWeightedLength(3, "abc");
+        this.assertWeightedLength(6, "日本語");
+        this.assertWeightedLength(12, "あいう😀えお");
+        this.assertWeightedLength(3, "a‍b");
+    }
+
+    @Test
+    public void emojiPresentationWithSelector() {
+        // ⚽️ ⌚️ ⭐️ 🀄️ の U+FE0F は前の文字に含まれる
+        this.assertWeightedLength(2, "⚽️");
+        this.assertWeightedLength(2, "⌚️");
+        this.assertWeightedLength(2, "⭐️");
+        this.assertWeightedLength(2, "🀄️");
+        this.assertWeightedLength(4, "a⚽️b");
+        this.assertWeightedLength(2, "⚽");
+        this.assertWeightedLength(4, "⚽︎");
+        this.assertWeightedLength(2, "❤️");
+        this.assertWeightedLength(2, "❤");
+        this.assertWeightedLength(4, "❤︎");
+
+        // 😀 のあとの U+FE0F は別の絵文字として数えられる
+        this.assertWeightedLength(2, "😀");
+        this.assertWeightedLength(4, "😀️");
+        this.assertWeightedLength(2, "️");
+    }
+
+    @Test
+    public void textWithSelector() {
+        this.assertWeightedLength(1, "©");
+        this.assertWeightedLength(2, "©️");
+        this.assertWeightedLength(2, "™️");
+    }
+
+    @Test
+    public void keycap() {
+        this.assertWeightedLength(2, "1️⃣");
+        this.assertWeightedLength(2, "1⃣");
+        this.assertWeightedLength(2, "#️⃣");
+        this.assertWeightedLength(3, "1️");
+    }
+
+    @Test
+    public void skinTone() {
+        this.assertWeightedLength(2, "👍🏽");
+        this.assertWeightedLength(2, "☝️🏻");
+        this.assertWeightedLength(2, "☝🏻");
+    }
+
+    @Test
+    public void zwjSequence() {
+        this.assertWeightedLength(2, "👨‍👩‍👧‍👦");
+        this.assertWeightedLength(2, "👩‍❤️‍💋‍👨");
+        this.assertWeightedLength(2, "👨🏻‍🤝‍👨🏼");
+        this.assertWeightedLength(2, "🧑🏽‍💻");
+        this.assertWeightedLength(2, "🏃‍♀️");
+        this.assertWeightedLength(2, "🏳️‍🌈");
+        this.assertWeightedLength(2, "🏴‍☠️");
+
+        // 推奨されていない組み合わせは分けて数える
+        this.assertWeightedLength(8, "👨🏻‍🤝‍👨🏻");
+        this.assertWeightedLength(5, "😀‍😀");
+    }
+
+    @Test
+    public void flag() {
+        this.assertWeightedLength(2, "🇯🇵");
+        this.assertWeightedLength(4, "🇯🇵🇺🇸");
+        this.assertWeightedLength(4, "🇦🇦");
+        this.assertWeightedLength(2, "🏴󠁧󠁢󠁳󠁣󠁴󠁿");
+    }
+
+    @Test
+    public void url() {
+        this.assertWeightedLength(31, "⚽️ https://example.com/⚽️ ⚽️");
+        this.assertWeightedLength(77, "example.com と example.net と example.org");
+        this.assertWeightedLength(52, "a.com/😀 b.net 😀");
+    }
+
+    @Test
+    public void normalization() {
+        this.assertWeightedLength(3, "😀e\u0301");
+        // U+11099 U+110BA は U+1109A になる
+        this.assertWeightedLength(2, "\uD804\uDC99\uD804\uDCBA");
+        // U+2F800 は U+4E3D 、 U+1D15E は U+1D157 U+1D165 になる
+        this.assertWeightedLength(2, "\uD87E\uDC00");
+        this.assertWeightedLength(4, "\uD834\uDD5E");
+    }
+}